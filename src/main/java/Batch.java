@@ -0,0 +1,443 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import lib.graph.CanonicalForm;
+import lib.graph.Components;
+import lib.graph.Graph;
+import lib.graph.GraphBW;
+import lib.graph.IGraph;
+import lib.graph.ReductionCache;
+import lib.graph.io.GraphBWIO;
+import lib.graph.io.GraphIO;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Traite un ensemble de fichiers de matrices dans une seule JVM, sur plusieurs threads.
+ *
+ * Usage : Batch [-t threads] [-m reduce|loopless] [-scc] [-canon] [-o dossier] [-gz] [-cache cases] [-timeout secondes] (dossier | motif)...
+ *
+ * Avec -scc chaque graphe est découpé en composantes fortement connexes (voir Components) qui
+ * sont traitées en parallèle, puis rassemblées. Les arrêtes entre composantes sont perdues : le
+ * graphe obtenu n'est alors plus équivalent à celui d'une réduction du graphe entier. Le statut
+ * du fichier est alors OK_LOSSY, le détail donne le nombre d'arrêtes perdues, et avec -o le
+ * graphe obtenu est écrit dans un fichier suffixé par .scc pour ne pas être pris pour une
+ * réduction du fichier d'entrée.
+ *
+ * Avec -canon le détail d'un fichier traité contient l'empreinte de la forme canonique du graphe
+ * chargé (voir CanonicalForm) : deux fichiers qui ne diffèrent que par l'ordre des sommets ont
+ * la même empreinte.
+ *
+ * Avec -gz les graphes obtenus sont écrits compressés au format gzip, dans des fichiers suffixés
+ * par .gz (ils restent lisibles par GraphIO.loadFromFile).
+ *
+ * Avec -cache les résultats des réductions sont conservés dans un ReductionCache d'au plus ce
+ * nombre de cases de matrices, partagé par tous les fichiers : un graphe déjà réduit n'est pas
+ * réduit une seconde fois. Sans cette option aucun résultat n'est conservé.
+ *
+ * Un argument est soit un dossier (tous ses fichiers), soit un fichier, soit un motif glob sur le
+ * nom de fichier (par exemple tests/g*.txt). Pour chaque fichier une ligne est écrite sur la
+ * sortie standard, dans l'ordre des fichiers :
+ *
+ * fichier	OK|OK_LOSSY|FAIL|TIMEOUT	durée en ms	sommets avant	sommets après	détail
+ *
+ * Une erreur sur un fichier n'arrête pas le traitement des autres. Le thread d'un fichier en
+ * TIMEOUT est interrompu, ce qui arrête les boucles de réduction de Graph et GraphBW ; si le
+ * traitement ne s'arrête pas pour autant (pendant le chargement par exemple), un thread est
+ * ajouté au pool pour le remplacer jusqu'à sa fin, les fichiers suivants ne restent donc pas
+ * bloqués.
+ */
+public class Batch {
+    private final String mode;
+    private final String output;
+    private final int threads;
+    private final long timeout;
+    private boolean scc;
+    private boolean canonical;
+    private boolean gzip;
+
+    /**
+     *
+     * @param mode "reduce" pour Graph.reduceAll, "loopless" pour GraphBW.removeLooplessNodes
+     * @param output dossier où écrire les graphes obtenus, null pour ne rien écrire
+     * @param threads nombre de threads
+     * @param timeout temps maximum par fichier en millisecondes, 0 pour ne pas limiter
+     */
+    public Batch(String mode, String output, int threads, long timeout) {
+        if(!mode.equals("reduce") && !mode.equals("loopless")) {
+            throw new IllegalArgumentException("unknown mode: " + mode);
+        }
+        this.mode = mode;
+        this.output = output;
+        this.threads = threads;
+        this.timeout = timeout;
+    }
+
+    /**
+     *
+     * @param scc True pour traiter séparément les composantes fortement connexes de chaque graphe
+     */
+    public void setScc(boolean scc) {
+        this.scc = scc;
+    }
+
+    /**
+     *
+     * @param canonical True pour donner l'empreinte de la forme canonique de chaque graphe chargé
+     */
+    public void setCanonical(boolean canonical) {
+        this.canonical = canonical;
+    }
+
+    /**
+     *
+     * @param gzip True pour compresser les graphes écrits dans le dossier de sortie
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Résultat du traitement d'un fichier. Les champs sont écrits par le thread du fichier et lus
+     * par le thread principal, qui peut les lire avant la fin du traitement en cas de TIMEOUT.
+     */
+    private static class Result {
+        volatile long start;
+
+        /**
+         * True quand process est terminé, protégé par le verrou du Result
+         */
+        boolean done;
+
+        /**
+         * True si un thread a été ajouté au pool pour remplacer celui de ce fichier, protégé par le verrou du Result
+         */
+        boolean replaced;
+        volatile long time;
+        volatile int before = -1;
+        volatile int after = -1;
+
+        /**
+         * nombre d'arrêtes perdues par le découpage en composantes avec -scc
+         */
+        volatile long dropped;
+        volatile String detail = "";
+
+        /**
+         *
+         * @return une copie des champs affichés
+         */
+        Result copy() {
+            Result res = new Result();
+            res.time = time;
+            res.before = before;
+            res.after = after;
+            res.dropped = dropped;
+            res.detail = detail;
+            return res;
+        }
+    }
+
+    /**
+     * Traite les fichiers et écrit une ligne par fichier dans out
+     * @param files fichiers à traiter
+     * @param out sortie des résultats
+     * @return le nombre de fichiers qui n'ont pas pu être traités
+     * @throws InterruptedException
+     */
+    public int run(List<Path> files, PrintStream out) throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "Batch");
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<Result> results = new ArrayList<>();
+        List<Future<Result>> futures = new ArrayList<>();
+        for(Path p : files) {
+            Result r = new Result();
+            results.add(r);
+            futures.add(pool.submit(() -> {
+                try {
+                    return process(p, r);
+                } finally {
+                    synchronized (r) {
+                        r.done = true;
+                        if(r.replaced) {
+                            resize(pool, -1);
+                        }
+                    }
+                }
+            }));
+        }
+        pool.shutdown();
+
+        int failures = 0;
+        for(int k = 0; k < files.size(); k++) {
+            Result r = results.get(k);
+            String status;
+            try {
+                await(futures.get(k), r);
+                if(r.dropped > 0) {
+                    r.detail = (r.detail.isEmpty() ? "" : r.detail + " ") + "dropped " + r.dropped + " edges";
+                    status = "OK_LOSSY";
+                }
+                else {
+                    status = "OK";
+                }
+            } catch (TimeoutException e) {
+                synchronized (r) {
+                    // le thread n'a pas encore vu l'interruption : il est remplacé jusqu'à ce qu'il se termine
+                    if(!r.done) {
+                        r.replaced = true;
+                        resize(pool, 1);
+                    }
+                    // le thread peut encore écrire dans r : la ligne est écrite à partir d'une copie
+                    r = r.copy();
+                }
+                r.time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - results.get(k).start);
+                r.detail = "";
+                status = "TIMEOUT";
+                failures++;
+            } catch (ExecutionException e) {
+                Throwable c = e.getCause();
+                r.detail = c.getClass().getSimpleName() + (c.getMessage() == null ? "" : ": " + c.getMessage());
+                status = "FAIL";
+                failures++;
+            }
+
+            out.println(files.get(k) + "\t" + status + "\t" + r.time + "\t" + r.before + "\t" + r.after + "\t" + r.detail);
+        }
+
+        return failures;
+    }
+
+    /**
+     * Change le nombre de threads de pool
+     * @param pool un ThreadPoolExecutor dont le nombre minimum et maximum de threads sont égaux
+     * @param delta nombre de threads à ajouter, ou à retirer si il est négatif
+     */
+    private static synchronized void resize(ThreadPoolExecutor pool, int delta) {
+        int size = pool.getCorePoolSize() + delta;
+        // le minimum ne peut pas dépasser le maximum, même entre les deux appels
+        if(delta > 0) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        }
+        else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Attend la fin de f, au plus timeout millisecondes après le début de son traitement.
+     * En cas de dépassement le thread de f est interrompu.
+     */
+    private void await(Future<Result> f, Result r) throws InterruptedException, ExecutionException, TimeoutException {
+        if(timeout == 0) {
+            f.get();
+            return;
+        }
+
+        while (true) {
+            try {
+                f.get(10, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                long start = r.start;
+                if(start != 0 && System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(timeout)) {
+                    f.cancel(true);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Charge, réduit et sauve un fichier
+     */
+    private Result process(Path p, Result r) throws Exception {
+        r.start = System.nanoTime();
+        try {
+            Graph g = GraphIO.loadFromFile(p.toString());
+            if(g == null) {
+                throw new IOException("empty file");
+            }
+            r.before = g.nbVertices();
+            if(canonical) {
+                r.detail = CanonicalForm.of(g).toString();
+            }
+
+            IGraph res;
+            if(scc) {
+                r.dropped = Components.droppedEdges(g);
+                if(mode.equals("reduce")) {
+                    res = Components.assemble(Components.reduceAll(g, ForkJoinPool.commonPool()));
+                }
+                else {
+                    GraphBW bw = GraphBW.fromGraphUnsafe(g);
+                    res = Components.assembleBW(Components.removeLooplessNodes(bw, ForkJoinPool.commonPool()));
+                }
+            }
+            else if(mode.equals("reduce")) {
+                g.reduceAll();
+                res = g;
+            }
+            else {
+                GraphBW bw = GraphBW.fromGraphUnsafe(g);
+                bw.removeLooplessNodes();
+                res = bw;
+            }
+            r.after = res.nbVertices();
+
+            if(output != null) {
+                String dst = output + File.separator + p.getFileName() + (r.dropped > 0 ? ".scc" : "") + (gzip ? ".gz" : "");
+                if(res instanceof GraphBW) {
+                    GraphBWIO.writeToFile(res, dst, gzip);
+                }
+                else {
+                    GraphIO.writeToFile(res, dst, gzip);
+                }
+            }
+            return r;
+        } finally {
+            synchronized (r) {
+                // après un TIMEOUT la durée est celle donnée par le thread principal
+                if(!r.replaced) {
+                    r.time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - r.start);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param arg un dossier, un fichier ou un motif glob sur le nom de fichier
+     * @return les fichiers correspondants, triés par nom
+     * @throws IOException
+     */
+    static List<Path> expand(String arg) throws IOException {
+        List<Path> res = new ArrayList<>();
+        Path p = Paths.get(arg);
+
+        if(Files.isDirectory(p)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(p)) {
+                for(Path f : ds) {
+                    if(Files.isRegularFile(f)) {
+                        res.add(f);
+                    }
+                }
+            }
+        }
+        else if(Files.isRegularFile(p)) {
+            res.add(p);
+        }
+        else {
+            Path dir = p.getParent() == null ? Paths.get(".") : p.getParent();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, p.getFileName().toString())) {
+                for(Path f : ds) {
+                    if(Files.isRegularFile(f)) {
+                        res.add(p.getParent() == null ? f.getFileName() : f);
+                    }
+                }
+            }
+        }
+
+        Collections.sort(res);
+        return res;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String mode = "reduce";
+        String output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long timeout = 0;
+        boolean scc = false;
+        boolean canonical = false;
+        boolean gzip = false;
+        long cache = 0;
+        List<Path> files = new ArrayList<>();
+
+        for(int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-m":
+                    mode = args[++i];
+                    break;
+                case "-o":
+                    output = args[++i];
+                    break;
+                case "-scc":
+                    scc = true;
+                    break;
+                case "-canon":
+                    canonical = true;
+                    break;
+                case "-gz":
+                    gzip = true;
+                    break;
+                case "-cache":
+                    cache = Long.parseLong(args[++i]);
+                    break;
+                case "-timeout":
+                    timeout = (long) (Double.parseDouble(args[++i]) * 1000);
+                    break;
+                default:
+                    files.addAll(expand(args[i]));
+            }
+        }
+
+        if(output != null) {
+            Files.createDirectories(Paths.get(output));
+        }
+
+        if(cache > 0) {
+            ReductionCache.setShared(new ReductionCache(cache));
+        }
+
+        long start = System.nanoTime();
+        Batch batch = new Batch(mode, output, threads, timeout);
+        batch.setScc(scc);
+        batch.setCanonical(canonical);
+        batch.setGzip(gzip);
+        int failures = batch.run(files, System.out);
+        long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.err.println(files.size() + " files, " + failures + " failures, " + time + " ms"
+                + (cache > 0 ? ", " + ReductionCache.getShared() : ""));
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -17,20 +17,23 @@ limitations under the License.
 import lib.exceptions.InvalidOperationException;
 import lib.graph.GraphBW;
 import lib.graph.io.GraphBWIO;
+import lib.graph.io.StreamingHistory;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 public class Main {
-    public static void main(String[] args) throws IOException, InvalidOperationException {
-        GraphBW g = GraphBWIO.loadFromFile("tests/g2.txt");
+    public static void main(String[] args) throws IOException, InvalidOperationException, InterruptedException {
+        if(args.length != 0) {
+            Batch.main(args);
+            return;
+        }
 
-        List<GraphBW> gc = new ArrayList<>();
-        g.removeLooplessNodes(gc);
-        gc.add(g.clone());
+        GraphBW g = GraphBWIO.loadFromFile("tests/g2.txt");
 
-        GraphBWIO.writeToDotFiles(gc, "dot/");
+        try (StreamingHistory gc = new StreamingHistory("dot/")) {
+            g.removeLooplessNodes(gc);
+            gc.record(g);
+        }
 
         //gbw.addEntries(3, 6);
         //gbw.removeNode(7);
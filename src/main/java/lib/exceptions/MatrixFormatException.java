@@ -0,0 +1,57 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Fichier de graphe mal formé : valeur invalide, ligne de mauvaise taille, matrice non carrée...
+ */
+public class MatrixFormatException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int column;
+
+    /**
+     *
+     * @param message description de l'erreur
+     * @param line numéro de la ligne, à partir de 1
+     * @param column numéro de la colonne (en octets), à partir de 1
+     */
+    public MatrixFormatException(String message, int line, int column) {
+        super("line " + line + ", column " + column + ": " + message);
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     *
+     * @return le numéro de la ligne de l'erreur, à partir de 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     *
+     * @return le numéro de la colonne de l'erreur, à partir de 1
+     */
+    public int getColumn() {
+        return column;
+    }
+}
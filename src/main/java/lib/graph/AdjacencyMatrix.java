@@ -0,0 +1,554 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Matrice d'adjacence carrée stockée ligne par ligne, chaque ligne dans son propre tableau.
+ * Toutes les lignes ont la même longueur, la capacité de la matrice : ajouter un sommet ne déplace
+ * donc pas les lignes existantes tant qu'il reste de la place, et la capacité double quand il n'y
+ * en a plus.
+ *
+ * Les sommets sont vus de l'extérieur avec des indices denses 0..n-1. L'indice i correspond à
+ * la ligne et la colonne slots[i] : supprimer un sommet ne fait que retirer son slot de slots,
+ * la ligne et la colonne restent en place jusqu'à ce que la proportion de slots morts justifie
+ * un compactage. slots reste strictement croissant, ce qui permet de compacter sur place.
+ * Les colonnes d'indice supérieur ou égal à used valent toujours 0, un nouveau slot n'a donc pas
+ * besoin d'être effacé dans les lignes existantes. Chaque sommet reçoit aussi un identifiant qui
+ * ne change pas tant qu'il existe.
+ *
+ * Une copie partage les lignes de la matrice d'origine au lieu de les recopier : elle ne coûte
+ * que O(n). Une ligne n'est modifiable que si son propriétaire est la matrice elle-même
+ * (owners[s] == token) ; sinon elle est recopiée à la première écriture. Après une copie, la
+ * matrice d'origine change de jeton : aucune des deux ne peut plus écrire dans les lignes
+ * partagées, que l'autre peut donc lire sans risque, y compris depuis un autre thread.
+ *
+ * Une matrice peut aussi être créée sans ses lignes (voir <i>lazy</i>) : rows[s] est alors null
+ * jusqu'au premier accès à la ligne, qui est lue à ce moment dans source.
+ *
+ * La somme de chaque ligne et de chaque colonne est tenue à jour à chaque modification,
+ * ce qui donne le nombre d'arrêtes sortantes et entrantes d'un sommet en temps constant.
+ *
+ * Une empreinte 64 bits du contenu est tenue à jour de la même façon : c'est la somme, pour chaque
+ * case (i, j), de sa valeur multipliée par une clé pseudo-aléatoire qui ne dépend que de i et j.
+ * Elle ne dépend ni des slots ni des identifiants, deux matrices égales ont donc la même empreinte.
+ * Supprimer un sommet décale les indices de toutes les cases suivantes : plutôt que de changer
+ * leurs clés, la suppression marque l'empreinte comme invalide et elle est recalculée au prochain
+ * appel de <i>hash()</i>.
+ */
+final class AdjacencyMatrix {
+    private static final AtomicInteger TOKENS = new AtomicInteger();
+
+    /**
+     * Origine des lignes d'une matrice qui ne sont pas encore en mémoire
+     */
+    interface RowSource {
+        /**
+         * Lit une ligne, cette méthode peut être appelée depuis plusieurs threads
+         * @param s le slot de la ligne, qui est aussi son indice dans la source
+         * @param row tableau de zéros dans lequel écrire les valeurs de la ligne
+         */
+        void read(int s, int[] row);
+
+        /**
+         * Lit une seule case, sans charger sa ligne
+         * @param s le slot de la ligne
+         * @param t le slot de la colonne
+         * @return la valeur de la case
+         */
+        int cell(int s, int t);
+    }
+
+    /**
+     * rows[s] est la ligne du slot s, éventuellement partagée avec d'autres matrices
+     */
+    int[][] rows;
+
+    /**
+     * owners[s] est le jeton de la matrice qui peut écrire dans rows[s]
+     */
+    private int[] owners;
+    private int token;
+
+    /**
+     * origine des lignes encore null dans rows, null si toutes les lignes sont en mémoire
+     */
+    private RowSource source;
+
+    int nb;
+
+    /**
+     * slots[i] est la ligne (et la colonne) du sommet d'indice i
+     */
+    int[] slots;
+
+    /**
+     * nombre de slots utilisés, sommets supprimés compris
+     */
+    int used;
+
+    /**
+     * ids[i] est l'identifiant stable du sommet d'indice i
+     */
+    int[] ids;
+    int nextId;
+
+    /**
+     * rowSums[s] et colSums[s] sont les sommes de la ligne et de la colonne du slot s (sommets vivants uniquement)
+     */
+    int[] rowSums;
+    int[] colSums;
+
+    /**
+     * vrai si une case a pu recevoir une valeur négative : une somme nulle ne prouve alors plus
+     * que la ligne ou la colonne est vide
+     */
+    private boolean signed;
+
+    /**
+     * somme des get(i, j) * cellKey(i, j), modulo 2^64, si hashed est vrai
+     */
+    private long hash;
+    private boolean hashed = true;
+
+    /**
+     *
+     * @param n nombre de sommets
+     */
+    AdjacencyMatrix(int n) {
+        nb = n;
+        used = n;
+        token = TOKENS.incrementAndGet();
+        rows = new int[n][n];
+        owners = new int[n];
+        slots = new int[n];
+        ids = new int[n];
+        rowSums = new int[n];
+        colSums = new int[n];
+        nextId = n;
+
+        for(int i = 0; i < n; i++) {
+            owners[i] = token;
+            slots[i] = i;
+            ids[i] = i;
+        }
+    }
+
+    private AdjacencyMatrix() {
+    }
+
+    /**
+     * Crée une matrice dont les lignes ne sont lues dans source qu'au premier accès
+     * @param n nombre de sommets
+     * @param source origine des lignes
+     * @param rowSums somme de chaque ligne
+     * @param colSums somme de chaque colonne
+     * @param signed True si la matrice peut contenir des valeurs négatives
+     * @return une matrice de n sommets d'identifiants 0..n-1, dont l'empreinte est calculée au
+     * premier appel de <i>hash</i>
+     */
+    static AdjacencyMatrix lazy(int n, RowSource source, int[] rowSums, int[] colSums, boolean signed) {
+        AdjacencyMatrix m = new AdjacencyMatrix();
+        m.nb = n;
+        m.used = n;
+        m.token = TOKENS.incrementAndGet();
+        m.rows = new int[n][];
+        m.owners = new int[n];
+        m.source = source;
+        m.slots = new int[n];
+        m.ids = new int[n];
+        m.rowSums = rowSums;
+        m.colSums = colSums;
+        m.signed = signed;
+        m.hashed = false;
+        m.nextId = n;
+
+        for(int i = 0; i < n; i++) {
+            m.slots[i] = i;
+            m.ids[i] = i;
+        }
+        return m;
+    }
+
+    /**
+     *
+     * @param s un slot
+     * @return la ligne du slot s, lue dans source si elle n'est pas encore en mémoire
+     */
+    private int[] row(int s) {
+        int[] r = rows[s];
+        return r != null ? r : load(s);
+    }
+
+    /**
+     *
+     * @param s un slot
+     * @param t un slot
+     * @return la valeur de la case (s, t), sans charger la ligne s si elle n'est pas en mémoire
+     */
+    private int cell(int s, int t) {
+        int[] r = rows[s];
+        return r != null ? r[t] : source.cell(s, t);
+    }
+
+    private int[] load(int s) {
+        int[] r = new int[rows.length];
+        source.read(s, r);
+        rows[s] = r;
+        owners[s] = token;
+        return r;
+    }
+
+    /**
+     *
+     * @return le nombre de sommets
+     */
+    int size() {
+        return nb;
+    }
+
+    /**
+     *
+     * @param i1 l'indice correspondant à un sommet
+     * @param i2 l'indice correspondant à un sommet
+     * @return le nombre d'arrêtes de i1 vers i2
+     */
+    int get(int i1, int i2) {
+        return row(slots[i1])[slots[i2]];
+    }
+
+    /**
+     * Met à jour le nombre d'arrêtes de i1 vers i2
+     * @param i1 l'indice correspondant à un sommet
+     * @param i2 l'indice correspondant à un sommet
+     * @param n nouvelle valeur
+     */
+    void set(int i1, int i2, int n) {
+        int s1 = slots[i1];
+        int s2 = slots[i2];
+        int[] row = row(s1);
+        if(owners[s1] != token) {
+            row = rows[s1] = row.clone();
+            owners[s1] = token;
+        }
+        int d = n - row[s2];
+        row[s2] = n;
+        signed |= n < 0;
+        rowSums[s1] += d;
+        colSums[s2] += d;
+        if(hashed) {
+            hash += d * cellKey(i1, i2);
+        }
+    }
+
+    /**
+     * Copie la ligne i dans dst, sans passer par <i>get</i> pour chaque case
+     * @param i l'indice correspondant à un sommet
+     * @param dst tableau d'au moins nb valeurs
+     */
+    void getRow(int i, int[] dst) {
+        int[] row = row(slots[i]);
+        for(int j = 0; j < nb; j++) {
+            dst[j] = row[slots[j]];
+        }
+    }
+
+    /**
+     * Remplace toute la ligne i
+     * @param i l'indice correspondant à un sommet
+     * @param values values[j] est la nouvelle valeur de la case (i, j), au moins n valeurs
+     */
+    void setRow(int i, int[] values) {
+        int s = slots[i];
+        int[] row = row(s);
+        if(owners[s] != token) {
+            row = rows[s] = row.clone();
+            owners[s] = token;
+        }
+
+        for(int j = 0; j < nb; j++) {
+            int sj = slots[j];
+            int d = values[j] - row[sj];
+            if(d != 0) {
+                row[sj] = values[j];
+                signed |= values[j] < 0;
+                rowSums[s] += d;
+                colSums[sj] += d;
+                if(hashed) {
+                    hash += d * cellKey(i, j);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @return l'empreinte de la matrice, recalculée en O(n^2) si un sommet a été supprimé depuis le dernier appel
+     */
+    long hash() {
+        if(!hashed) {
+            long h = 0;
+            for(int i = 0; i < nb; i++) {
+                int[] row = row(slots[i]);
+                for(int j = 0; j < nb; j++) {
+                    h += row[slots[j]] * cellKey(i, j);
+                }
+            }
+            hash = h;
+            hashed = true;
+        }
+        return hash;
+    }
+
+    /**
+     *
+     * @param i un indice de ligne
+     * @param j un indice de colonne
+     * @return la clé de la case (i, j) dans l'empreinte
+     */
+    static long cellKey(int i, int j) {
+        return mix(((long) i << 32) | j);
+    }
+
+    /**
+     * Fonction de mélange de SplitMix64 : c'est une bijection, deux entrées différentes donnent
+     * deux clés différentes.
+     * @param x un entier
+     * @return x mélangé
+     */
+    static long mix(long x) {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     *
+     * @param i l'indice correspondant à un sommet
+     * @return la somme de la ligne i : le nombre d'arrêtes sortantes de i
+     */
+    int rowSum(int i) {
+        return rowSums[slots[i]];
+    }
+
+    /**
+     *
+     * @param i l'indice correspondant à un sommet
+     * @return True si la ligne i est vide, False si elle peut contenir une case non nulle. Répond
+     * en temps constant à partir de la somme de la ligne, sauf si la matrice a pu contenir des
+     * valeurs négatives : la réponse est alors toujours False.
+     */
+    boolean isEmptyRow(int i) {
+        return !signed && rowSums[slots[i]] == 0;
+    }
+
+    /**
+     *
+     * @param i l'indice correspondant à un sommet
+     * @return la somme de la colonne i : le nombre d'arrêtes entrantes de i
+     */
+    int colSum(int i) {
+        return colSums[slots[i]];
+    }
+
+    /**
+     *
+     * @param i l'indice correspondant à un sommet
+     * @return l'identifiant stable du sommet i
+     */
+    int id(int i) {
+        return ids[i];
+    }
+
+    /**
+     *
+     * @param id un identifiant de sommet
+     * @return l'indice actuel du sommet qui porte cet identifiant, -1 si il a été supprimé
+     */
+    int indexOf(int id) {
+        int i = Arrays.binarySearch(ids, 0, nb, id);
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * Ajoute k sommets sans arrête. La matrice est agrandie au plus une fois.
+     * @param k nombre de sommets à ajouter
+     * @return l'indice du premier sommet ajouté
+     */
+    int addNodes(int k) {
+        int first = nb;
+        int n = nb + k;
+
+        if(used + k > rows.length) {
+            compact(n > rows.length ? Math.max(n, 2 * rows.length) : rows.length);
+        }
+
+        if(slots.length < n) {
+            int len = Math.max(n, 2 * slots.length);
+            slots = Arrays.copyOf(slots, len);
+            ids = Arrays.copyOf(ids, len);
+        }
+
+        for(int i = first; i < n; i++) {
+            int s = used + i - first;
+            slots[i] = s;
+            ids[i] = nextId++;
+            rows[s] = new int[rows.length];
+            owners[s] = token;
+            rowSums[s] = 0;
+            colSums[s] = 0;
+        }
+
+        used += k;
+        nb = n;
+        return first;
+    }
+
+    /**
+     * Supprime les lignes et colonnes des sommets supprimés : après un compactage, le sommet i
+     * occupe le slot i. Les lignes qui appartiennent à la matrice et ont déjà la bonne longueur
+     * sont compactées sur place (comme slots est croissant, chaque case est lue avant d'être
+     * écrasée), les autres sont recopiées.
+     * @param capacity nouvelle capacité, au moins égale au nombre de sommets
+     */
+    private void compact(int capacity) {
+        int[][] r = new int[capacity][];
+        int[] o = new int[capacity];
+
+        for(int i = 0; i < nb; i++) {
+            int s = slots[i];
+            int[] src = row(s);
+            int[] dst = owners[s] == token && src.length == capacity ? src : new int[capacity];
+            for(int j = 0; j < nb; j++) {
+                dst[j] = src[slots[j]];
+            }
+            if(dst == src) {
+                Arrays.fill(dst, nb, used, 0);
+            }
+            r[i] = dst;
+            o[i] = token;
+        }
+
+        int[] rs = new int[capacity];
+        int[] cs = new int[capacity];
+        for(int i = 0; i < nb; i++) {
+            rs[i] = rowSums[slots[i]];
+            cs[i] = colSums[slots[i]];
+            slots[i] = i;
+        }
+
+        // toutes les lignes des sommets restants ont été lues
+        source = null;
+        rows = r;
+        owners = o;
+        rowSums = rs;
+        colSums = cs;
+        used = nb;
+    }
+
+    /**
+     * Supprime le sommet i en O(n), les sommets suivants sont décalés d'un indice.
+     * Le slot du sommet est seulement marqué comme mort, la matrice est compactée
+     * quand plus de la moitié des slots sont morts. L'empreinte sera recalculée par <i>hash()</i>.
+     * La ligne et la colonne du sommet sont lues case par case, sans charger les lignes qui ne sont
+     * pas encore en mémoire.
+     * @param i l'indice correspondant à un sommet
+     */
+    void removeNode(int i) {
+        int s = slots[i];
+        for(int j = 0; j < nb; j++) {
+            int sj = slots[j];
+            rowSums[sj] -= cell(sj, s);
+            colSums[sj] -= cell(s, sj);
+        }
+        hashed = false;
+
+        System.arraycopy(slots, i + 1, slots, i, nb - i - 1);
+        System.arraycopy(ids, i + 1, ids, i, nb - i - 1);
+        nb--;
+
+        if(2 * (used - nb) > used) {
+            compact(rows.length);
+        }
+    }
+
+    /**
+     * La copie partage les lignes de la matrice, qui seront recopiées par l'une ou l'autre à leur
+     * première modification : elle coûte O(n) au lieu de O(n^2).
+     * @return une copie de la matrice, avec les mêmes identifiants
+     */
+    AdjacencyMatrix copy() {
+        AdjacencyMatrix m = new AdjacencyMatrix();
+        m.rows = rows.clone();
+        m.owners = new int[rows.length];
+        m.source = source;
+        m.token = TOKENS.incrementAndGet();
+        m.nb = nb;
+        m.slots = slots.clone();
+        m.used = used;
+        m.ids = ids.clone();
+        m.nextId = nextId;
+        m.rowSums = rowSums.clone();
+        m.colSums = colSums.clone();
+        m.signed = signed;
+        m.hash = hash;
+        m.hashed = hashed;
+
+        token = TOKENS.incrementAndGet();
+        return m;
+    }
+
+    /**
+     *
+     * @return les cases de la matrice ligne par ligne, dans un tableau de taille n * n
+     */
+    int[] toArray() {
+        int[] res = new int[nb * nb];
+        for(int i = 0; i < nb; i++) {
+            int[] row = row(slots[i]);
+            for(int j = 0; j < nb; j++) {
+                res[i * nb + j] = row[slots[j]];
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param n nombre de sommets
+     * @param cells les cases de la matrice ligne par ligne, comme renvoyées par <i>toArray()</i>
+     * @return une matrice de n sommets d'identifiants 0..n-1
+     */
+    static AdjacencyMatrix of(int n, int[] cells) {
+        AdjacencyMatrix m = new AdjacencyMatrix(n);
+        for(int i = 0; i < n; i++) {
+            System.arraycopy(cells, i * n, m.rows[i], 0, n);
+        }
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) {
+                m.rowSums[i] += cells[i * n + j];
+                m.colSums[j] += cells[i * n + j];
+                m.signed |= cells[i * n + j] < 0;
+                m.hash += cells[i * n + j] * cellKey(i, j);
+            }
+        }
+        return m;
+    }
+}
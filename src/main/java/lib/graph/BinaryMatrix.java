@@ -0,0 +1,494 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Format binaire d'un graphe, lu par projection du fichier en mémoire (FileChannel.map).
+ *
+ * Toutes les valeurs sont des entiers big-endian :
+ * <ul>
+ *     <li>l'en-tête : MAGIC, VERSION, les drapeaux (CSR, COLORS, SIGNED si la matrice contient une
+ *     valeur négative) et le nombre de sommets n</li>
+ *     <li>la somme de chaque ligne (n entiers) puis celle de chaque colonne (n entiers)</li>
+ *     <li>les couleurs, (n + 31) / 32 entiers dont le bit i % 32 de l'entier i / 32 vaut 1 si le
+ *     sommet i est noir ; tous nuls si le drapeau COLORS est absent</li>
+ *     <li>la matrice, soit pleine (n * n entiers, ligne par ligne), soit au format CSR : n + 1
+ *     positions de début de ligne puis, pour chaque case non nulle, sa colonne et sa valeur</li>
+ * </ul>
+ *
+ * L'ouverture ne lit que l'en-tête, les sommes et les couleurs : O(n). Les lignes de la matrice
+ * sont lues dans la projection au premier accès, le système ne charge donc que les pages touchées.
+ * L'empreinte de la matrice est calculée au premier appel de <i>getHash</i>.
+ *
+ * Comme les sommes sont utilisées sans relire la matrice, un fichier tronqué ou modifié doit être
+ * détecté : à l'ouverture la taille du fichier, les positions de début de ligne du format CSR et
+ * le total des sommes des lignes et des colonnes sont vérifiés ; chaque ligne lue est comparée à
+ * sa somme, et les sommes des colonnes sont comparées aux lignes une fois toutes les lignes lues.
+ * Une incohérence donne une IOException à l'ouverture, une UncheckedIOException à la lecture.
+ * Un fichier est projeté d'un seul bloc, sa taille est limitée à 2 Go (environ 23000 sommets en
+ * matrice pleine).
+ */
+public final class BinaryMatrix {
+    /**
+     * 0x89 'F' 'E' 'G' : l'octet 0x89 ne peut pas commencer un fichier texte
+     */
+    static final int MAGIC = 0x89464547;
+    static final int VERSION = 2;
+    static final int CSR = 1;
+    static final int COLORS = 2;
+    static final int SIGNED = 4;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private BinaryMatrix() {
+    }
+
+    /**
+     *
+     * @param path chemin d'un fichier
+     * @return True si le fichier commence par l'en-tête du format binaire
+     * @throws IOException
+     */
+    public static boolean isBinary(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path))) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            while (b.hasRemaining() && ch.read(b) >= 0) {
+            }
+            return !b.hasRemaining() && b.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Charge un graphe depuis un fichier binaire, les couleurs éventuelles sont ignorées
+     * @param path chemin du fichier à charger
+     * @return une instance de Graph dont les lignes sont lues au premier accès
+     * @throws IOException si le fichier ne peut pas être lu ou n'est pas au format binaire
+     */
+    public static Graph read(String path) throws IOException {
+        Graph g = new Graph(0);
+        g.data = open(path).matrix;
+        return g;
+    }
+
+    /**
+     * Charge un graphe noir/blanc depuis un fichier binaire. Si le fichier n'a pas de couleurs, le
+     * graphe est construit par <i>GraphBW.fromGraphUnsafe</i>, comme pour un fichier texte.
+     * @param path chemin du fichier à charger
+     * @return une instance de GraphBW
+     * @throws IOException si le fichier ne peut pas être lu ou n'est pas au format binaire
+     */
+    public static GraphBW readBW(String path) throws IOException {
+        Mapping m = open(path);
+
+        if(m.colors == null) {
+            Graph g = new Graph(0);
+            g.data = m.matrix;
+            return GraphBW.fromGraphUnsafe(g);
+        }
+
+        GraphBW res = new GraphBW(0);
+        res.data = m.matrix;
+        res.colors = m.colors;
+        res.rehashColors();
+        return res;
+    }
+
+    /**
+     * Sauve le graphe g dans un fichier binaire, avec ses couleurs si c'est un GraphBW.
+     * La matrice est écrite au format CSR si il est plus petit que la matrice pleine.
+     * @param g une instance de IGraph
+     * @param path destination
+     * @throws IOException
+     */
+    public static void write(IGraph g, String path) throws IOException {
+        int n = g.nbVertices();
+        int[] rowSums = new int[n];
+        int[] colSums = new int[n];
+        int[] starts = new int[n + 1];
+        int[] row = new int[n];
+        boolean signed = false;
+
+        for(int i = 0; i < n; i++) {
+            g.copyExits(i, row);
+            int nnz = 0;
+            for(int j = 0; j < n; j++) {
+                int v = row[j];
+                if(v != 0) {
+                    rowSums[i] += v;
+                    colSums[j] += v;
+                    signed |= v < 0;
+                    nnz++;
+                }
+            }
+            starts[i + 1] = starts[i] + nnz;
+        }
+
+        boolean csr = 2L * starts[n] + n + 1 < (long) n * n;
+        GraphBW bw = g instanceof GraphBW ? (GraphBW) g : null;
+        int flags = (csr ? CSR : 0) | (bw != null ? COLORS : 0) | (signed ? SIGNED : 0);
+
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(ch);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(flags);
+            out.putInt(n);
+
+            for(int s : rowSums) {
+                out.putInt(s);
+            }
+            for(int s : colSums) {
+                out.putInt(s);
+            }
+
+            for(int w = 0; w < n; w += 32) {
+                int bits = 0;
+                if(bw != null) {
+                    for(int i = w; i < Math.min(n, w + 32); i++) {
+                        if(bw.colors[i] == GraphBW.BLACK) {
+                            bits |= 1 << (i - w);
+                        }
+                    }
+                }
+                out.putInt(bits);
+            }
+
+            if(csr) {
+                for(int start : starts) {
+                    out.putInt(start);
+                }
+                for(int i = 0; i < n; i++) {
+                    g.copyExits(i, row);
+                    for(int j = 0; j < n; j++) {
+                        if(row[j] != 0) {
+                            out.putInt(j);
+                            out.putInt(row[j]);
+                        }
+                    }
+                }
+            }
+            else {
+                for(int i = 0; i < n; i++) {
+                    g.copyExits(i, row);
+                    for(int v : row) {
+                        out.putInt(v);
+                    }
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Projette le fichier en mémoire et lit son en-tête, les sommes et les couleurs
+     * @param path chemin du fichier
+     */
+    private static Mapping open(String path) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(Paths.get(path))) {
+            long size = ch.size();
+            if(size > Integer.MAX_VALUE) {
+                throw new IOException(path + ": file larger than 2 GB");
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if(buf.capacity() < 8 || buf.getInt(0) != MAGIC) {
+            throw new IOException(path + ": not a binary graph file");
+        }
+        int version = buf.getInt(4);
+        if(version != VERSION) {
+            throw new IOException(path + ": unsupported version " + version);
+        }
+        if(buf.capacity() < HEADER_SIZE) {
+            throw new IOException(path + ": truncated header");
+        }
+        int flags = buf.getInt(8);
+        int n = buf.getInt(12);
+        if(n < 0 || (flags & ~(CSR | COLORS | SIGNED)) != 0) {
+            throw new IOException(path + ": corrupted header");
+        }
+
+        IntBuffer ints = buf.asIntBuffer();
+        int words = (n + 31) / 32;
+        long matrix = HEADER_SIZE / 4 + 2L * n + words;
+        boolean csr = (flags & CSR) != 0;
+        boolean signed = (flags & SIGNED) != 0;
+        long expected = csr ? matrix + n + 1 : matrix + (long) n * n;
+        if(4 * expected > buf.capacity()) {
+            throw new IOException(path + ": truncated file");
+        }
+
+        int[] rowSums = new int[n];
+        int[] colSums = new int[n];
+        ints.position(HEADER_SIZE / 4);
+        ints.get(rowSums);
+        ints.get(colSums);
+
+        // les deux totaux sont la somme de toutes les cases, modulo 2^32 comme dans AdjacencyMatrix
+        int total = 0;
+        for(int i = 0; i < n; i++) {
+            total += rowSums[i] - colSums[i];
+        }
+        if(total != 0) {
+            throw new IOException(path + ": corrupted row or column sums");
+        }
+
+        Mapping res = new Mapping();
+        if((flags & COLORS) != 0) {
+            res.colors = new byte[n];
+            for(int i = 0; i < n; i++) {
+                int bits = ints.get(HEADER_SIZE / 4 + 2 * n + i / 32);
+                res.colors[i] = (bits >>> (i % 32) & 1) != 0 ? GraphBW.BLACK : GraphBW.WHITE;
+            }
+        }
+
+        AdjacencyMatrix.RowSource source;
+        if(csr) {
+            int[] starts = new int[n + 1];
+            ints.position((int) matrix);
+            ints.get(starts);
+            if(starts[0] != 0) {
+                throw new IOException(path + ": corrupted row index");
+            }
+            for(int i = 0; i < n; i++) {
+                if(starts[i] > starts[i + 1] || starts[i + 1] - starts[i] > n) {
+                    throw new IOException(path + ": corrupted row index");
+                }
+            }
+            expected = matrix + n + 1 + 2L * starts[n];
+            source = new CsrRows(path, ints, (int) (matrix + n + 1), starts, rowSums, colSums, signed);
+        }
+        else {
+            source = new DenseRows(path, ints, (int) matrix, rowSums, colSums, signed);
+        }
+        if(4 * expected != buf.capacity()) {
+            throw new IOException(path + ": " + buf.capacity() + " bytes, expected " + 4 * expected);
+        }
+
+        res.matrix = AdjacencyMatrix.lazy(n, source, rowSums, colSums, signed);
+        return res;
+    }
+
+    /**
+     * Contenu d'un fichier ouvert
+     */
+    private static final class Mapping {
+        AdjacencyMatrix matrix;
+
+        /**
+         * null si le fichier n'a pas de couleurs
+         */
+        byte[] colors;
+    }
+
+    /**
+     * Vérification des lignes lues dans le fichier par rapport aux sommes de l'en-tête
+     */
+    private abstract static class Rows implements AdjacencyMatrix.RowSource {
+        final String path;
+        final int n;
+        private final int[] rowSums;
+        private final int[] colSums;
+
+        /**
+         * False si le drapeau SIGNED est absent : une valeur négative est alors une corruption
+         */
+        private final boolean signed;
+
+        /**
+         * loaded[s] est vrai si la ligne s a déjà été vérifiée, protégé par le verrou du Rows
+         */
+        private final boolean[] loaded;
+
+        /**
+         * somme des colonnes des lignes déjà vérifiées, protégée par le verrou du Rows
+         */
+        private final int[] seen;
+        private int remaining;
+
+        Rows(String path, int[] rowSums, int[] colSums, boolean signed) {
+            this.path = path;
+            this.n = rowSums.length;
+            this.rowSums = rowSums.clone();
+            this.colSums = colSums.clone();
+            this.signed = signed;
+            this.loaded = new boolean[n];
+            this.seen = new int[n];
+            this.remaining = n;
+        }
+
+        /**
+         * Vérifie la somme de la ligne s, et les sommes des colonnes quand c'est la dernière ligne
+         * qui n'avait pas encore été lue
+         * @param s le slot de la ligne
+         * @param row les valeurs de la ligne
+         */
+        final void check(int s, int[] row) {
+            int sum = 0;
+            boolean negative = false;
+            for(int j = 0; j < n; j++) {
+                sum += row[j];
+                negative |= row[j] < 0;
+            }
+            if(sum != rowSums[s] || (negative && !signed)) {
+                throw corrupted(path, s);
+            }
+
+            synchronized (this) {
+                if(loaded[s]) {
+                    return;
+                }
+                loaded[s] = true;
+                for(int j = 0; j < n; j++) {
+                    seen[j] += row[j];
+                }
+                if(--remaining == 0) {
+                    for(int j = 0; j < n; j++) {
+                        if(seen[j] != colSums[j]) {
+                            throw new UncheckedIOException(new IOException(path + ": corrupted column sum " + j));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lignes d'une matrice pleine
+     */
+    private static final class DenseRows extends Rows {
+        private final IntBuffer ints;
+        private final int offset;
+
+        DenseRows(String path, IntBuffer ints, int offset, int[] rowSums, int[] colSums, boolean signed) {
+            super(path, rowSums, colSums, signed);
+            this.ints = ints;
+            this.offset = offset;
+        }
+
+        @Override
+        public void read(int s, int[] row) {
+            IntBuffer b = ints.duplicate();
+            b.position(offset + s * n);
+            b.get(row, 0, n);
+            check(s, row);
+        }
+
+        @Override
+        public int cell(int s, int t) {
+            return ints.get(offset + s * n + t);
+        }
+    }
+
+    /**
+     * Lignes d'une matrice au format CSR
+     */
+    private static final class CsrRows extends Rows {
+        private final IntBuffer ints;
+        private final int offset;
+        private final int[] starts;
+
+        CsrRows(String path, IntBuffer ints, int offset, int[] starts, int[] rowSums, int[] colSums, boolean signed) {
+            super(path, rowSums, colSums, signed);
+            this.ints = ints;
+            this.offset = offset;
+            this.starts = starts;
+        }
+
+        @Override
+        public void read(int s, int[] row) {
+            int last = -1;
+            for(int k = starts[s]; k < starts[s + 1]; k++) {
+                int j = ints.get(offset + 2 * k);
+                int v = ints.get(offset + 2 * k + 1);
+                // colonnes strictement croissantes, comme le suppose cell
+                if(j <= last || j >= n || v == 0) {
+                    throw corrupted(path, s);
+                }
+                last = j;
+                row[j] = v;
+            }
+            check(s, row);
+        }
+
+        /**
+         * Les colonnes d'une ligne sont écrites dans l'ordre croissant : recherche dichotomique
+         */
+        @Override
+        public int cell(int s, int t) {
+            int lo = starts[s];
+            int hi = starts[s + 1] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int j = ints.get(offset + 2 * mid);
+                if(j < t) {
+                    lo = mid + 1;
+                }
+                else if(j > t) {
+                    hi = mid - 1;
+                }
+                else {
+                    return ints.get(offset + 2 * mid + 1);
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static UncheckedIOException corrupted(String path, int row) {
+        return new UncheckedIOException(new IOException(path + ": corrupted row " + row));
+    }
+
+    /**
+     * Écriture d'entiers dans un tampon réutilisé
+     */
+    private static final class Writer {
+        private final FileChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Writer(FileChannel out) {
+            this.out = out;
+        }
+
+        void putInt(int v) throws IOException {
+            if(buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(v);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
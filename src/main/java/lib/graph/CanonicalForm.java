@@ -0,0 +1,821 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Forme canonique d'un graphe : un ordre des sommets qui ne dépend que de la structure du graphe,
+ * si bien que deux graphes qui ne diffèrent que par la numérotation de leurs sommets ont la même
+ * forme canonique (même matrice une fois réordonnée, même empreinte).
+ *
+ * Les sommets sont d'abord répartis en classes par raffinement : deux sommets restent dans la même
+ * classe tant qu'ils ont la même couleur et, pour chaque classe, le même nombre d'arrêtes vers et
+ * depuis cette classe. Le raffinement est guidé par une file de classes : seules les classes qui ont
+ * des arrêtes vers ou depuis la classe retirée de la file sont découpées, en parcourant les listes
+ * d'adjacence de ses sommets, et il s'arrête dès que toutes les classes sont des singletons.
+ *
+ * Si des classes de plusieurs sommets restent, chaque sommet de la première d'entre elles est à
+ * tour de rôle isolé dans sa propre classe, puis on raffine à nouveau. Chaque feuille de cet arbre
+ * de recherche donne un ordre des sommets, on garde celle dont les traces des raffinements le long
+ * de son chemin (une empreinte des découpages effectués, qui ne dépend pas de la numérotation) puis
+ * la matrice réordonnée sont les plus petites. Une branche dont la trace dépasse déjà celle du
+ * chemin de la meilleure feuille est abandonnée. Deux feuilles qui donnent la même matrice révèlent
+ * un automorphisme du graphe : la branche en cours est alors abandonnée jusqu'au dernier sommet
+ * commun aux chemins des deux feuilles, et les automorphismes trouvés servent à ne pas explorer les
+ * branches qui leur sont équivalentes.
+ *
+ * Les couleurs d'un GraphBW font partie de la structure, un Graph est traité comme un GraphBW tout blanc.
+ */
+public final class CanonicalForm {
+    private final int n;
+    private final int[] order;
+
+    /**
+     * couleurs puis cases de la matrice dans l'ordre canonique
+     */
+    private final int[] key;
+    private final long hash;
+
+    private CanonicalForm(int n, int[] order, int[] key) {
+        this.n = n;
+        this.order = order;
+        this.key = key;
+
+        long h = AdjacencyMatrix.mix(n);
+        for(int p = 0; p < n; p++) {
+            h += key[p] * AdjacencyMatrix.mix(~(long) p);
+            for(int q = 0; q < n; q++) {
+                h += key[n + p * n + q] * AdjacencyMatrix.cellKey(p, q);
+            }
+        }
+        this.hash = h;
+    }
+
+    /**
+     *
+     * @param g une instance de IGraph, les couleurs sont prises en compte si c'est un GraphBW
+     * @return la forme canonique de g
+     */
+    public static CanonicalForm of(IGraph g) {
+        int n = g.nbVertices();
+        int[] a = new int[n * n];
+        int[] row = new int[n];
+        int[] colors = new int[n];
+        for(int i = 0; i < n; i++) {
+            g.copyExits(i, row);
+            System.arraycopy(row, 0, a, i * n, n);
+            if(g instanceof GraphBW) {
+                colors[i] = ((GraphBW) g).colors[i];
+            }
+        }
+
+        Search s = new Search(n, a, colors);
+        Partition p = Partition.of(colors);
+        s.refiner.refine(p, p.starts());
+        s.search(p, new int[0]);
+
+        int[] order = new int[n];
+        for(int v = 0; v < n; v++) {
+            order[s.best[v]] = v;
+        }
+        return new CanonicalForm(n, order, s.bestKey);
+    }
+
+    /**
+     * Exploration de l'arbre des individualisations
+     */
+    private static final class Search {
+        final int n;
+        final int[] a;
+        final int[] colors;
+        final Refiner refiner;
+
+        /**
+         * best[v] est la position de v dans la meilleure feuille trouvée
+         */
+        int[] best;
+        int[] bestKey;
+        int[] bestPath;
+        long[] bestTrace;
+
+        /**
+         * trace[k] est la trace du raffinement qui suit l'individualisation du k-ième sommet du chemin en cours
+         */
+        final long[] trace;
+
+        /**
+         * automorphismes trouvés, sous forme de permutations des sommets
+         */
+        final List<int[]> automorphisms = new ArrayList<>();
+
+        Search(int n, int[] a, int[] colors) {
+            this.n = n;
+            this.a = a;
+            this.colors = colors;
+            this.refiner = new Refiner(n, a);
+            this.trace = new long[n];
+        }
+
+        /**
+         *
+         * @param p partition stable
+         * @param path sommets individualisés pour arriver à p
+         * @return la profondeur à laquelle reprendre l'exploration : path.length si elle continue normalement,
+         * moins si un automorphisme rend équivalente toute la branche jusqu'à cette profondeur
+         */
+        int search(Partition p, int[] path) {
+            int target = 0;
+            while (target < n && p.end[target] == target + 1) {
+                target++;
+            }
+
+            if(target == n) {
+                return leaf(p.cell, path);
+            }
+
+            List<Integer> explored = new ArrayList<>();
+            Orbits orbits = null;
+            int[] next = Arrays.copyOf(path, path.length + 1);
+            // p n'est pas modifiée par l'exploration, ses positions restent valables
+            for(int k = target; k < p.end[target]; k++) {
+                int v = p.lab[k];
+                // les orbites ne servent qu'à partir du deuxième fils, la plupart des noeuds n'en ont qu'un
+                if(!explored.isEmpty()) {
+                    if(orbits == null) {
+                        orbits = new Orbits(n);
+                    }
+                    orbits.update(automorphisms, path);
+                    if(orbits.meets(v, explored)) {
+                        continue;
+                    }
+                }
+                explored.add(v);
+
+                Partition d = p.copy();
+                trace[path.length] = refiner.refine(d, new int[] {d.individualize(v)});
+                // toutes les feuilles de cette branche seraient plus grandes que la meilleure
+                if(compareTraces(path.length + 1) > 0) {
+                    continue;
+                }
+                next[path.length] = v;
+                int level = search(d, next);
+                if(level < path.length) {
+                    return level;
+                }
+            }
+            return path.length;
+        }
+
+        /**
+         * Compare la feuille c (une partition discrète) à la meilleure feuille trouvée
+         * @param c c[v] est la position de v
+         * @param path sommets individualisés pour arriver à c
+         * @return path.length, ou la longueur du début commun à path et au chemin de la meilleure feuille
+         * si les deux feuilles donnent la même matrice
+         */
+        private int leaf(int[] c, int[] path) {
+            int[] order = new int[n];
+            for(int v = 0; v < n; v++) {
+                order[c[v]] = v;
+            }
+
+            int cmp = compareTraces(path.length);
+            if(cmp == 0) {
+                cmp = path.length != bestTrace.length ? Integer.compare(path.length, bestTrace.length) : compareToBest(order);
+            }
+            if(cmp < 0) {
+                int[] k = new int[n + n * n];
+                for(int p = 0; p < n; p++) {
+                    k[p] = colors[order[p]];
+                    for(int q = 0; q < n; q++) {
+                        k[n + p * n + q] = a[order[p] * n + order[q]];
+                    }
+                }
+                best = c.clone();
+                bestKey = k;
+                bestPath = path.clone();
+                bestTrace = Arrays.copyOf(trace, path.length);
+            }
+            else if(cmp == 0) {
+                int[] bestOrder = new int[n];
+                for(int v = 0; v < n; v++) {
+                    bestOrder[best[v]] = v;
+                }
+                int[] s = new int[n];
+                for(int v = 0; v < n; v++) {
+                    s[v] = bestOrder[c[v]];
+                }
+                automorphisms.add(s);
+
+                // s envoie la branche de la meilleure feuille sur celle-ci à partir de leur dernier sommet commun
+                int common = 0;
+                while (common < path.length && common < bestPath.length && path[common] == bestPath[common]) {
+                    common++;
+                }
+                return common;
+            }
+            return path.length;
+        }
+
+        /**
+         *
+         * @param depth une profondeur du chemin en cours
+         * @return le signe de la comparaison de trace[0..depth) au début de même longueur des traces de la
+         * meilleure feuille, -1 si il n'y en a pas encore et 1 si elles sont plus courtes que depth
+         */
+        private int compareTraces(int depth) {
+            if(bestKey == null) {
+                return -1;
+            }
+            for(int k = 0; k < depth; k++) {
+                if(k == bestTrace.length) {
+                    return 1;
+                }
+                if(trace[k] != bestTrace[k]) {
+                    return trace[k] < bestTrace[k] ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Compare, sans la construire, la clé de l'ordre order à celle de la meilleure feuille
+         */
+        private int compareToBest(int[] order) {
+            for(int p = 0; p < n; p++) {
+                int x = colors[order[p]];
+                if(x != bestKey[p]) {
+                    return x < bestKey[p] ? -1 : 1;
+                }
+            }
+            for(int p = 0; p < n; p++) {
+                int r = order[p] * n;
+                for(int q = 0; q < n; q++) {
+                    int x = a[r + order[q]];
+                    int y = bestKey[n + p * n + q];
+                    if(x != y) {
+                        return x < y ? -1 : 1;
+                    }
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Partition ordonnée des sommets : les sommets d'une classe occupent des positions consécutives
+     * de lab, et une classe est désignée par sa première position.
+     */
+    private static final class Partition {
+        /**
+         * lab[k] est le sommet en position k
+         */
+        final int[] lab;
+
+        /**
+         * pos[v] est la position de v, lab[pos[v]] == v
+         */
+        final int[] pos;
+
+        /**
+         * cell[v] est la première position de la classe de v
+         */
+        final int[] cell;
+
+        /**
+         * end[s] est la position qui suit la classe qui commence en s, défini seulement au début d'une classe
+         */
+        final int[] end;
+        int cells;
+
+        private Partition(int[] lab, int[] pos, int[] cell, int[] end, int cells) {
+            this.lab = lab;
+            this.pos = pos;
+            this.cell = cell;
+            this.end = end;
+            this.cells = cells;
+        }
+
+        /**
+         *
+         * @param colors une couleur par sommet
+         * @return la partition des sommets par couleur, les classes rangées par couleur croissante
+         */
+        static Partition of(int[] colors) {
+            int n = colors.length;
+            long[] sorted = new long[n];
+            for(int v = 0; v < n; v++) {
+                sorted[v] = (long) colors[v] << 32 | v;
+            }
+            Arrays.sort(sorted);
+
+            Partition p = new Partition(new int[n], new int[n], new int[n], new int[n], 0);
+            int start = 0;
+            for(int k = 0; k < n; k++) {
+                if(k > 0 && sorted[k] >> 32 != sorted[k - 1] >> 32) {
+                    p.end[start] = k;
+                    p.cells++;
+                    start = k;
+                }
+                int v = (int) sorted[k];
+                p.lab[k] = v;
+                p.pos[v] = k;
+                p.cell[v] = start;
+            }
+            if(n > 0) {
+                p.end[start] = n;
+                p.cells++;
+            }
+            return p;
+        }
+
+        Partition copy() {
+            return new Partition(lab.clone(), pos.clone(), cell.clone(), end.clone(), cells);
+        }
+
+        /**
+         *
+         * @return la première position de chaque classe
+         */
+        int[] starts() {
+            int[] res = new int[cells];
+            int k = 0;
+            for(int s = 0; s < lab.length; s = end[s]) {
+                res[k++] = s;
+            }
+            return res;
+        }
+
+        /**
+         * Isole v au début de sa classe
+         * @param v un sommet d'une classe qui en contient plusieurs
+         * @return la position de la classe {v}
+         */
+        int individualize(int v) {
+            int s = cell[v];
+            int e = end[s];
+            swap(pos[v], s);
+
+            end[s] = s + 1;
+            end[s + 1] = e;
+            for(int k = s + 1; k < e; k++) {
+                cell[lab[k]] = s + 1;
+            }
+            cells++;
+            return s;
+        }
+
+        /**
+         * Échange les sommets des positions k et l
+         */
+        void swap(int k, int l) {
+            int u = lab[k];
+            int v = lab[l];
+            lab[k] = v;
+            lab[l] = u;
+            pos[v] = k;
+            pos[u] = l;
+        }
+    }
+
+    /**
+     * Raffinement d'une partition jusqu'à ce qu'elle soit équitable. Les tableaux de travail sont
+     * alloués une fois pour toute la recherche.
+     */
+    private static final class Refiner {
+        final int n;
+
+        /**
+         * arrêtes vers chaque sommet w : inVertex[k] vers w avec inWeight[k] arrêtes, pour k de inStart[w] à inStart[w + 1]
+         */
+        final int[] inStart;
+        final int[] inVertex;
+        final int[] inWeight;
+
+        /**
+         * arrêtes depuis chaque sommet, rangées comme les arrêtes entrantes
+         */
+        final int[] outStart;
+        final int[] outVertex;
+        final int[] outWeight;
+
+        /**
+         * nombre d'arrêtes de chaque sommet vers la classe séparatrice, et depuis cette classe
+         */
+        final int[] toSplitter;
+        final int[] fromSplitter;
+        final boolean[] touched;
+        final int[] touchedVertices;
+
+        /**
+         * touchedCount[c] est le nombre de sommets touchés de la classe qui commence en c
+         */
+        final int[] touchedCount;
+        final int[] touchedCells;
+        final int[] splitter;
+
+        /**
+         * file des classes séparatrices, désignées par leur première position
+         */
+        final int[] queue;
+        final boolean[] queued;
+        int head;
+        int size;
+
+        /**
+         * trace du raffinement en cours
+         */
+        long trace;
+
+        final long[] keys;
+        final long[] distinct;
+        final int[] rank;
+        final int[] fragments;
+        final int[] cursor;
+        final int[] members;
+
+        Refiner(int n, int[] a) {
+            this.n = n;
+            inStart = new int[n + 1];
+            outStart = new int[n + 1];
+            for(int u = 0; u < n; u++) {
+                for(int w = 0; w < n; w++) {
+                    if(a[u * n + w] != 0) {
+                        outStart[u + 1]++;
+                        inStart[w + 1]++;
+                    }
+                }
+            }
+            for(int v = 0; v < n; v++) {
+                inStart[v + 1] += inStart[v];
+                outStart[v + 1] += outStart[v];
+            }
+
+            inVertex = new int[inStart[n]];
+            inWeight = new int[inStart[n]];
+            outVertex = new int[outStart[n]];
+            outWeight = new int[outStart[n]];
+            int[] in = Arrays.copyOf(inStart, n);
+            int[] out = Arrays.copyOf(outStart, n);
+            for(int u = 0; u < n; u++) {
+                for(int w = 0; w < n; w++) {
+                    int e = a[u * n + w];
+                    if(e != 0) {
+                        outVertex[out[u]] = w;
+                        outWeight[out[u]++] = e;
+                        inVertex[in[w]] = u;
+                        inWeight[in[w]++] = e;
+                    }
+                }
+            }
+
+            toSplitter = new int[n];
+            fromSplitter = new int[n];
+            touched = new boolean[n];
+            touchedVertices = new int[n];
+            touchedCount = new int[n];
+            touchedCells = new int[n];
+            splitter = new int[n];
+            queue = new int[Math.max(n, 1)];
+            queued = new boolean[n];
+            keys = new long[n];
+            distinct = new long[n];
+            rank = new int[n];
+            fragments = new int[n + 1];
+            cursor = new int[n];
+            members = new int[n];
+        }
+
+        /**
+         * Raffine p jusqu'à ce qu'elle soit équitable. Une classe n'est jamais fusionnée avec une autre
+         * et l'ordre des classes est conservé : une classe découpée est remplacée par ses morceaux,
+         * rangés suivant leurs arrêtes vers et depuis la classe séparatrice.
+         * @param p une partition, mise à jour
+         * @param splitters premières positions des classes par rapport auxquelles p n'est pas forcément
+         * équitable, toutes les autres doivent déjà l'être
+         * @return la trace du raffinement : une empreinte des classes découpées et de leurs morceaux
+         */
+        long refine(Partition p, int[] splitters) {
+            trace = 0;
+            for(int s : splitters) {
+                push(s);
+            }
+
+            while (size > 0 && p.cells < n) {
+                int s = queue[head];
+                head = (head + 1) % queue.length;
+                size--;
+                queued[s] = false;
+
+                int m = p.end[s] - s;
+                System.arraycopy(p.lab, s, splitter, 0, m);
+
+                // chaque sommet touché est rangé à la fin de sa classe, après ceux déjà touchés
+                int nt = 0;
+                int nc = 0;
+                for(int k = 0; k < m; k++) {
+                    int w = splitter[k];
+                    for(int x = inStart[w]; x < inStart[w + 1]; x++) {
+                        int u = inVertex[x];
+                        toSplitter[u] += inWeight[x];
+                        if(!touched[u]) {
+                            nc = touch(p, u, nt++, nc);
+                        }
+                    }
+                    for(int x = outStart[w]; x < outStart[w + 1]; x++) {
+                        int u = outVertex[x];
+                        fromSplitter[u] += outWeight[x];
+                        if(!touched[u]) {
+                            nc = touch(p, u, nt++, nc);
+                        }
+                    }
+                }
+
+                // les classes sont découpées dans l'ordre de leurs positions, qui ne dépend pas de la numérotation
+                Arrays.sort(touchedCells, 0, nc);
+                for(int k = 0; k < nc; k++) {
+                    int c = touchedCells[k];
+                    int t = touchedCount[c];
+                    touchedCount[c] = 0;
+                    if(p.end[c] - c > 1) {
+                        split(p, c, t);
+                    }
+                }
+
+                for(int t = 0; t < nt; t++) {
+                    int u = touchedVertices[t];
+                    touched[u] = false;
+                    toSplitter[u] = 0;
+                    fromSplitter[u] = 0;
+                }
+            }
+
+            // la partition est discrète : les classes restantes n'ont plus rien à découper
+            while (size > 0) {
+                queued[queue[head]] = false;
+                head = (head + 1) % queue.length;
+                size--;
+            }
+            return AdjacencyMatrix.mix(trace ^ p.cells);
+        }
+
+        /**
+         * Marque u comme touché par la classe séparatrice et le range à la fin de sa classe
+         * @param t nombre de sommets déjà touchés
+         * @param nc nombre de classes déjà touchées
+         * @return le nouveau nombre de classes touchées
+         */
+        private int touch(Partition p, int u, int t, int nc) {
+            touched[u] = true;
+            touchedVertices[t] = u;
+            int c = p.cell[u];
+            if(touchedCount[c] == 0) {
+                touchedCells[nc++] = c;
+            }
+            p.swap(p.pos[u], p.end[c] - 1 - touchedCount[c]++);
+            return nc;
+        }
+
+        /**
+         * Découpe la classe qui commence en c suivant les nombres d'arrêtes de ses sommets vers et
+         * depuis la classe séparatrice, et ajoute les morceaux à la file. Les sommets non touchés ont
+         * la clé 0 ; quand toutes les clés des sommets touchés sont positives, ils forment le premier
+         * morceau et restent en place : seuls les t sommets touchés, à la fin de la classe, sont triés.
+         * @param t nombre de sommets touchés de la classe
+         */
+        private void split(Partition p, int c, int t) {
+            int e = p.end[c];
+            int lo = e - t;
+            for(int k = lo; k < e; k++) {
+                if(key(p.lab[k]) <= 0) {
+                    lo = c;
+                    break;
+                }
+            }
+
+            int m = e - lo;
+            for(int k = 0; k < m; k++) {
+                int v = p.lab[lo + k];
+                members[k] = v;
+                keys[k] = key(v);
+            }
+
+            System.arraycopy(keys, 0, distinct, 0, m);
+            Arrays.sort(distinct, 0, m);
+            int d = 0;
+            for(int k = 0; k < m; k++) {
+                if(k == 0 || distinct[k] != distinct[k - 1]) {
+                    distinct[d++] = distinct[k];
+                }
+            }
+
+            // fragments[f] est le début du f-ième morceau, le premier étant celui des sommets non touchés si il est à part
+            int first = lo > c ? 1 : 0;
+            int count = first + d;
+            if(count == 1) {
+                return;
+            }
+
+            Arrays.fill(fragments, first, count + 1, 0);
+            for(int k = 0; k < m; k++) {
+                rank[k] = Arrays.binarySearch(distinct, 0, d, keys[k]);
+                fragments[first + rank[k] + 1]++;
+            }
+            fragments[0] = c;
+            fragments[first] = lo;
+            for(int r = first; r < count; r++) {
+                fragments[r + 1] += fragments[r];
+            }
+            System.arraycopy(fragments, first, cursor, 0, d);
+
+            for(int k = 0; k < m; k++) {
+                int v = members[k];
+                int q = cursor[rank[k]]++;
+                p.lab[q] = v;
+                p.pos[v] = q;
+                p.cell[v] = fragments[first + rank[k]];
+            }
+
+            int largest = 0;
+            for(int r = 0; r < count; r++) {
+                p.end[fragments[r]] = fragments[r + 1];
+                if(fragments[r + 1] - fragments[r] > fragments[largest + 1] - fragments[largest]) {
+                    largest = r;
+                }
+            }
+            p.cells += count - 1;
+
+            trace = AdjacencyMatrix.mix(trace ^ c);
+            for(int r = 0; r < count; r++) {
+                trace = AdjacencyMatrix.mix(trace ^ fragments[r]);
+            }
+            for(int r = 0; r < d; r++) {
+                trace = AdjacencyMatrix.mix(trace ^ distinct[r]);
+            }
+
+            // si c a déjà servi de séparatrice, les arrêtes vers son plus grand morceau se déduisent des autres
+            boolean all = queued[c];
+            for(int r = 0; r < count; r++) {
+                if(all || r != largest) {
+                    push(fragments[r]);
+                }
+            }
+        }
+
+        /**
+         *
+         * @return les nombres d'arrêtes de v vers et depuis la classe séparatrice, 0 si v n'est pas touché
+         */
+        private long key(int v) {
+            return (long) toSplitter[v] << 32 | (fromSplitter[v] & 0xFFFFFFFFL);
+        }
+
+        private void push(int s) {
+            if(!queued[s]) {
+                queued[s] = true;
+                queue[(head + size) % queue.length] = s;
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Orbites des sommets sous le groupe engendré par les automorphismes qui fixent un chemin donné.
+     * Les automorphismes ne font que s'ajouter à la liste : seuls les nouveaux sont pris en compte à chaque mise à jour.
+     */
+    private static final class Orbits {
+        final int[] parent;
+        int done;
+
+        Orbits(int n) {
+            parent = new int[n];
+            for(int u = 0; u < n; u++) {
+                parent[u] = u;
+            }
+        }
+
+        void update(List<int[]> automorphisms, int[] path) {
+            for(; done < automorphisms.size(); done++) {
+                int[] s = automorphisms.get(done);
+                boolean fixes = true;
+                for(int p : path) {
+                    if(s[p] != p) {
+                        fixes = false;
+                        break;
+                    }
+                }
+                if(fixes) {
+                    for(int u = 0; u < parent.length; u++) {
+                        parent[find(parent, u)] = find(parent, s[u]);
+                    }
+                }
+            }
+        }
+
+        /**
+         *
+         * @return True si v est dans l'orbite d'un sommet de explored
+         */
+        boolean meets(int v, List<Integer> explored) {
+            int r = find(parent, v);
+            for(int u : explored) {
+                if(find(parent, u) == r) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static int find(int[] parent, int u) {
+        while (parent[u] != u) {
+            parent[u] = parent[parent[u]];
+            u = parent[u];
+        }
+        return u;
+    }
+
+    /**
+     *
+     * @return le nombre de sommets
+     */
+    public int nbVertices() {
+        return n;
+    }
+
+    /**
+     *
+     * @return order[k] est l'indice, dans le graphe d'origine, du sommet en position k dans l'ordre canonique
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    /**
+     *
+     * @param p une position dans l'ordre canonique
+     * @param q une position dans l'ordre canonique
+     * @return le nombre d'arrêtes du sommet en position p vers le sommet en position q
+     */
+    public int getEdgeCount(int p, int q) {
+        return key[n + p * n + q];
+    }
+
+    /**
+     * Empreinte de la forme canonique : <i>IGraph.getHash()</i> du graphe réordonné (couleurs comprises)
+     * combinée au nombre de sommets. Elle ne dépend ni de la numérotation des sommets ni de l'exécution,
+     * elle peut donc servir de clé dans un stockage persistant.
+     * @return l'empreinte
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     *
+     * @param o un objet
+     * @return True si o est la forme canonique d'un graphe isomorphe (couleurs comprises)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof CanonicalForm)) {
+            return false;
+        }
+        CanonicalForm f = (CanonicalForm) o;
+        return n == f.n && hash == f.hash && Arrays.equals(key, f.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
+    /**
+     *
+     * @return l'empreinte en hexadécimal sur 16 chiffres
+     */
+    @Override
+    public String toString() {
+        return String.format("%016x", hash);
+    }
+}
@@ -0,0 +1,396 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+import lib.exceptions.InvalidOperationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Décomposition d'un graphe en composantes fortement connexes (algorithme de Tarjan).
+ *
+ * Un sommet transitoire (seul dans sa composante et sans boucle) ne fait partie d'aucun cycle :
+ * il est ignoré. Les autres composantes sont extraites chacune dans son propre graphe et peuvent
+ * être réduites en parallèle ; le temps de calcul dépend alors de la plus grande composante et
+ * non du graphe entier.
+ *
+ * Le graphe reconstruit contient les composantes réduites les unes à la suite des autres, sans
+ * les arrêtes qui allaient d'une composante à une autre : il décrit les parties irréductibles
+ * du graphe, pas le graphe réductible lui-même. <i>droppedEdges</i> donne le nombre d'arrêtes
+ * ainsi perdues ; s'il est nul, le résultat est celui de la réduction du graphe entier.
+ */
+public abstract class Components {
+
+    /**
+     *
+     * @param g une instance de IGraph
+     * @return les composantes fortement connexes de g qui contiennent au moins une arrête, dans un
+     * ordre topologique (les arrêtes entre composantes vont d'une composante vers une suivante) ;
+     * les sommets de chaque composante sont triés
+     */
+    public static int[][] of(IGraph g) {
+        int n = g.nbVertices();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int top = 0;
+
+        // pile d'appels : sommet et prochain successeur à examiner
+        int[] callVertex = new int[n];
+        int[] callNext = new int[n];
+
+        Arrays.fill(index, -1);
+        int counter = 0;
+        List<int[]> res = new ArrayList<>();
+
+        for(int root = 0; root < n; root++) {
+            if(index[root] != -1) {
+                continue;
+            }
+
+            int depth = 0;
+            callVertex[0] = root;
+            callNext[0] = 0;
+            index[root] = low[root] = counter++;
+            stack[top++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int v = callVertex[depth];
+                int w = callNext[depth];
+
+                while (w < n && g.getEdgeCount(v, w) == 0) {
+                    w++;
+                }
+
+                if(w < n) {
+                    callNext[depth] = w + 1;
+                    if(index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        stack[top++] = w;
+                        onStack[w] = true;
+                        depth++;
+                        callVertex[depth] = w;
+                        callNext[depth] = 0;
+                    }
+                    else if(onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                if(low[v] == index[v]) {
+                    int start = top;
+                    do {
+                        start--;
+                        onStack[stack[start]] = false;
+                    } while (stack[start] != v);
+
+                    int[] c = Arrays.copyOfRange(stack, start, top);
+                    top = start;
+                    if(c.length > 1 || g.getEdgeCount(v, v) != 0) {
+                        Arrays.sort(c);
+                        res.add(c);
+                    }
+                }
+
+                depth--;
+                if(depth >= 0) {
+                    int u = callVertex[depth];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+            }
+        }
+
+        // Tarjan trouve les composantes dans l'ordre topologique inverse
+        int[][] out = new int[res.size()][];
+        for(int k = 0; k < out.length; k++) {
+            out[k] = res.get(out.length - 1 - k);
+        }
+        return out;
+    }
+
+    /**
+     *
+     * @param g une instance de IGraph
+     * @return le nombre d'arrêtes de g (en comptant leur multiplicité) qui ne sont dans aucune des
+     * composantes de <i>of(g)</i> : celles qui vont d'une composante à une autre et celles des
+     * sommets transitoires
+     */
+    public static long droppedEdges(IGraph g) {
+        int n = g.nbVertices();
+        int[] comp = new int[n];
+        Arrays.fill(comp, -1);
+        int[][] comps = of(g);
+        for(int k = 0; k < comps.length; k++) {
+            for(int v : comps[k]) {
+                comp[v] = k;
+            }
+        }
+
+        long res = 0;
+        int[] row = new int[n];
+        for(int i = 0; i < n; i++) {
+            g.copyExits(i, row);
+            for(int j = 0; j < n; j++) {
+                if(row[j] != 0 && (comp[i] == -1 || comp[i] != comp[j])) {
+                    res += row[j];
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param g une instance de Graph
+     * @param vertices indices de sommets de g
+     * @return le sous-graphe de g induit par vertices, le sommet k correspond à vertices[k]
+     */
+    public static Graph extract(Graph g, int[] vertices) {
+        Graph res = new Graph(vertices.length);
+        copy(g.data, vertices, res.data, 0);
+        return res;
+    }
+
+    /**
+     *
+     * @param g une instance de GraphBW
+     * @param vertices indices de sommets de g
+     * @return le sous-graphe de g induit par vertices avec les mêmes couleurs, le sommet k correspond à vertices[k]
+     */
+    public static GraphBW extract(GraphBW g, int[] vertices) {
+        GraphBW res = new GraphBW(vertices.length);
+        copy(g.data, vertices, res.data, 0);
+        for(int k = 0; k < vertices.length; k++) {
+            res.colors[k] = g.colors[vertices[k]];
+        }
+        res.rehashColors();
+        return res;
+    }
+
+    /**
+     * Copie les arrêtes entre les sommets vertices de src dans dst à partir du sommet offset
+     */
+    private static void copy(AdjacencyMatrix src, int[] vertices, AdjacencyMatrix dst, int offset) {
+        for(int a = 0; a < vertices.length; a++) {
+            for(int b = 0; b < vertices.length; b++) {
+                int e = src.get(vertices[a], vertices[b]);
+                if(e != 0) {
+                    dst.set(offset + a, offset + b, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Réduit chaque composante de g avec <i>Graph.reduceAll()</i> en parallèle sur pool.
+     * g n'est pas modifié.
+     * @param g une instance de Graph
+     * @param pool les threads à utiliser
+     * @return les composantes réduites, dans l'ordre de <i>of(g)</i>
+     * @throws InvalidOperationException si la réduction d'une composante échoue
+     */
+    public static List<Graph> reduceAll(Graph g, ForkJoinPool pool) throws InvalidOperationException {
+        int[][] comps = of(g);
+        List<Graph> parts = new ArrayList<>();
+        for(int[] c : comps) {
+            parts.add(extract(g, c));
+        }
+
+        run(pool, parts, Graph::reduceAll);
+        return parts;
+    }
+
+    /**
+     * Applique <i>GraphBW.removeLooplessNodes()</i> sur chaque composante de g en parallèle sur pool.
+     * g n'est pas modifié.
+     * @param g une instance de GraphBW
+     * @param pool les threads à utiliser
+     * @return les composantes obtenues, dans l'ordre de <i>of(g)</i>
+     * @throws InvalidOperationException si le traitement d'une composante échoue
+     */
+    public static List<GraphBW> removeLooplessNodes(GraphBW g, ForkJoinPool pool) throws InvalidOperationException {
+        int[][] comps = of(g);
+        List<GraphBW> parts = new ArrayList<>();
+        for(int[] c : comps) {
+            parts.add(extract(g, c));
+        }
+
+        run(pool, parts, GraphBW::removeLooplessNodes);
+        return parts;
+    }
+
+    /**
+     *
+     * @param parts des graphes
+     * @return un graphe qui contient les graphes de parts les uns à la suite des autres, sans arrête entre eux
+     */
+    public static Graph assemble(List<Graph> parts) {
+        int n = 0;
+        for(Graph p : parts) {
+            n += p.nbVertices();
+        }
+
+        Graph res = new Graph(n);
+        int offset = 0;
+        for(Graph p : parts) {
+            copy(p.data, range(p.nbVertices()), res.data, offset);
+            offset += p.nbVertices();
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param parts des graphes BW
+     * @return un graphe BW qui contient les graphes de parts les uns à la suite des autres, sans arrête entre eux
+     */
+    public static GraphBW assembleBW(List<GraphBW> parts) {
+        int n = 0;
+        for(GraphBW p : parts) {
+            n += p.nbVertices();
+        }
+
+        GraphBW res = new GraphBW(n);
+        int offset = 0;
+        for(GraphBW p : parts) {
+            copy(p.data, range(p.nbVertices()), res.data, offset);
+            System.arraycopy(p.colors, 0, res.colors, offset, p.nbVertices());
+            offset += p.nbVertices();
+        }
+        res.rehashColors();
+        return res;
+    }
+
+    /**
+     *
+     * @param n un entier
+     * @return le tableau 0..n-1
+     */
+    private static int[] range(int n) {
+        int[] res = new int[n];
+        for(int i = 0; i < n; i++) {
+            res[i] = i;
+        }
+        return res;
+    }
+
+    /**
+     * Opération sur une composante
+     */
+    private interface Step<T> {
+        void run(T g) throws InvalidOperationException;
+    }
+
+    /**
+     * Exécute step sur chaque graphe de parts sur pool, les plus grands en premier.
+     * Si le thread appelant est interrompu pendant l'attente, les threads du pool qui traitent
+     * encore une composante sont interrompus à leur tour (voir <i>Graph.checkInterrupted()</i>).
+     * @throws CancellationException si le thread appelant a été interrompu
+     */
+    private static <T extends IGraph> void run(ForkJoinPool pool, List<T> parts, Step<T> step) throws InvalidOperationException {
+        List<T> order = new ArrayList<>(parts);
+        order.sort(Comparator.comparingInt((T p) -> p.nbVertices()).reversed());
+
+        Thread caller = Thread.currentThread();
+        // threads qui exécutent une étape, protégé par son propre verrou
+        Set<Thread> runners = new HashSet<>();
+
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for(T p : order) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    Thread t = Thread.currentThread();
+                    synchronized (runners) {
+                        runners.add(t);
+                    }
+                    try {
+                        step.run(p);
+                    } catch (InvalidOperationException e) {
+                        throw new Failure(e);
+                    } finally {
+                        synchronized (runners) {
+                            runners.remove(t);
+                            // une interruption envoyée par cancel ne doit pas atteindre la tâche suivante du pool
+                            if(t != caller) {
+                                Thread.interrupted();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        ForkJoinTask<Void> root = pool.submit(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+
+        try {
+            root.get();
+        } catch (InterruptedException e) {
+            // les composantes qui n'ont pas commencé ne seront pas traitées
+            for(RecursiveAction t : tasks) {
+                t.cancel(false);
+            }
+            synchronized (runners) {
+                for(Thread t : runners) {
+                    t.interrupt();
+                }
+            }
+            caller.interrupt();
+            throw new CancellationException("reduction interrupted");
+        } catch (ExecutionException e) {
+            for(Throwable c = e.getCause(); c != null; c = c.getCause()) {
+                if(c instanceof InvalidOperationException) {
+                    throw (InvalidOperationException) c;
+                }
+            }
+            Throwable c = e.getCause();
+            if(c instanceof RuntimeException) {
+                throw (RuntimeException) c;
+            }
+            throw (Error) c;
+        }
+    }
+
+    /**
+     * Transporte une InvalidOperationException hors d'une tâche du ForkJoinPool
+     */
+    private static class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failure(InvalidOperationException e) {
+            super(e);
+        }
+    }
+}
@@ -18,27 +18,108 @@ package lib.graph;
 
 import lib.exceptions.InvalidOperationException;
 import lib.graph.io.GraphIO;
-import lib.math.Calcul;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.CancellationException;
 
 public class Graph implements IGraph {
-    ArrayList<Integer> data;
-    int nb;
+    /**
+     * True pour appliquer addExits, addEntries, subExits et subEntries directement sur les lignes et
+     * colonnes de la matrice, False pour les appliquer par composition (division, flow-equivalence et fusion)
+     */
+    private static volatile boolean directMoves = true;
+
+    AdjacencyMatrix data;
+
+    /**
+     * journal des opérations, null si elles ne sont pas enregistrées
+     */
+    private MoveLog log;
 
     /**
      *
      * @param n nombre de sommets
      */
     public Graph(int n) {
-        nb = n;
-        data = new ArrayList<Integer>(n * n);
+        data = new AdjacencyMatrix(n);
+    }
 
-        for(int i = 0; i < n * n; i++) {
-            data.add(0);
+    /**
+     * Choisit comment sont appliquées addExits, addEntries, subExits et subEntries, pour tous les graphes.
+     * Les deux modes donnent les mêmes graphes, y compris les identifiants des sommets et les exceptions :
+     * quand i1 est égal à i2 l'opération est toujours faite par composition.
+     * @param direct True pour modifier directement les lignes et colonnes de la matrice (par défaut),
+     * False pour enchaîner division, flow-equivalence et fusion
+     */
+    public static void setDirectMoves(boolean direct) {
+        directMoves = direct;
+    }
+
+    /**
+     *
+     * @return True si les opérations sont appliquées directement sur la matrice
+     */
+    public static boolean isDirectMoves() {
+        return directMoves;
+    }
+
+    /**
+     * Journal qui enregistre les opérations appliquées sur le graphe, null si il n'y en a pas
+     * @param log un MoveLog
+     */
+    public void setMoveLog(MoveLog log) {
+        this.log = log;
+    }
+
+    /**
+     *
+     * @return le journal des opérations du graphe, null si il n'y en a pas
+     */
+    public MoveLog getMoveLog() {
+        return log;
+    }
+
+    /**
+     * Enregistre une opération dans le journal et suspend le journal pendant qu'elle s'exécute,
+     * pour que les opérations qu'elle appelle ne soient pas enregistrées.
+     * Le journal doit être rétabli avec la valeur renvoyée à la fin de l'opération.
+     * @return le journal à rétablir
+     */
+    private MoveLog begin(int op, int a) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, a);
+            log = null;
+        }
+        return l;
+    }
+
+    private MoveLog begin(int op, int a, int b) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, a, b);
+            log = null;
+        }
+        return l;
+    }
+
+    private MoveLog begin(int op, int a, int b, int c) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, a, b, c);
+            log = null;
         }
+        return l;
+    }
+
+    private MoveLog begin(int op, int a, int[] list) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, a, list);
+            log = null;
+        }
+        return l;
     }
 
     /**
@@ -46,7 +127,26 @@ public class Graph implements IGraph {
      * @return le nombre de sommets
      */
     public int nbVertices() {
-        return nb;
+        return data.size();
+    }
+
+    /**
+     * Les indices des sommets sont toujours 0..nbVertices()-1 et se décalent quand un sommet
+     * est supprimé. L'identifiant d'un sommet, lui, ne change pas tant que le sommet existe.
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return l'identifiant stable du sommet i
+     */
+    public int getId(int i) {
+        return data.id(i);
+    }
+
+    /**
+     *
+     * @param id un identifiant renvoyé par <i>getId(int i)</i>
+     * @return l'indice actuel du sommet id, -1 si il a été supprimé
+     */
+    public int indexOf(int id) {
+        return data.indexOf(id);
     }
 
     /**
@@ -56,7 +156,16 @@ public class Graph implements IGraph {
      * @return le nombre d'arrêtes de i1 vers i2
      */
     public int getEdgeCount(int i1, int i2) {
-        return data.get(i1 * nb + i2);
+        return data.get(i1, i2);
+    }
+
+    /**
+     * Empreinte tenue à jour à chaque modification de la matrice, voir <i>IGraph.getHash()</i>
+     * @return l'empreinte du graphe
+     */
+    @Override
+    public long getHash() {
+        return data.hash();
     }
 
     /**
@@ -66,7 +175,7 @@ public class Graph implements IGraph {
      * @return le nombre d'arrêtes de i1 vers i2 dans la graphe sans la matrice identité.
      */
     private int getEdgeCountWithoutIdentity(int i1, int i2) {
-        int res = data.get(i1 * nb + i2);
+        int res = data.get(i1, i2);
         if(i1==i2)res--;
         return res;
     }
@@ -78,7 +187,25 @@ public class Graph implements IGraph {
      * @param n nouvelle valeur
      */
     public void setEdgeCount(int i1, int i2, int n) {
-        data.set(i1 * nb + i2, n);
+        if(log != null) {
+            log.add(MoveLog.SET_EDGE, i1, i2, n);
+        }
+        data.set(i1, i2, n);
+    }
+
+    /**
+     * Remplace toutes les sorties de i, en une seule passe sur la ligne de la matrice
+     * @param i l'indice correspondant à un sommet du graphe
+     * @param counts counts[j] est le nouveau nombre d'arrêtes de i vers j, pour j de 0 à nbVertices() - 1
+     */
+    public void setExits(int i, int[] counts) {
+        if(log != null) {
+            for(int j = 0; j < nbVertices(); j++) {
+                setEdgeCount(i, j, counts[j]);
+            }
+            return;
+        }
+        data.setRow(i, counts);
     }
 
     /**
@@ -141,15 +268,10 @@ public class Graph implements IGraph {
      * @return indice du sommet ajouté
      */
     public int addNode() {
-        data.ensureCapacity((nb + 1) * (nb + 1));
-        for(int i = nb; i <= data.size(); i += nb + 1) {
-            data.add(i, 0);
-        }
-        nb++;
-        for(int i = 0; i < nb; i++) {
-            data.add(0);
+        if(log != null) {
+            log.add(MoveLog.ADD_NODE);
         }
-        return nb - 1;
+        return data.addNodes(1);
     }
 
 
@@ -158,13 +280,10 @@ public class Graph implements IGraph {
      * @param i l'indice correspondant à un sommet du graphe
      */
     public void removeNode(int i) {
-        for(int j = 0; j < nb; j++) {
-            data.remove(i * nb);
+        if(log != null) {
+            log.add(MoveLog.REMOVE_NODE, i);
         }
-        for(int j = i; j < data.size(); j += nb - 1) {
-            data.remove(j);
-        }
-        nb--;
+        data.removeNode(i);
     }
 
     /**
@@ -174,19 +293,24 @@ public class Graph implements IGraph {
      * @return indice du nouveau sommet créé par l'opération
      */
     public int flowEquivalence(int i) {
-        int i2 = addNode();
-        for(int j = 0; j < nb; j++) {
-            int count = getEdgeCount(i, j);
-            addEdges(i2, j, count);
-
-            try {
-                removeEdges(i, j, count);
-            } catch (InvalidOperationException e) {
-                e.printStackTrace();
+        MoveLog l = begin(MoveLog.STRETCH, i);
+        try {
+            int i2 = addNode();
+            for(int j = 0; j < nbVertices(); j++) {
+                int count = getEdgeCount(i, j);
+                addEdges(i2, j, count);
+
+                try {
+                    removeEdges(i, j, count);
+                } catch (InvalidOperationException e) {
+                    e.printStackTrace();
+                }
             }
+            addEdge(i, i2);
+            return i2;
+        } finally {
+            log = l;
         }
-        addEdge(i, i2);
-        return i2;
     }
 
     /**
@@ -199,60 +323,101 @@ public class Graph implements IGraph {
      * et que cette arrête soit la seule arrête sortante de i1 et la seul arrête entrante de i2.
      */
     public void flowEquivalence(int i1, int i2) throws InvalidOperationException {
-        //verify i1 exits
-        for(int j = 0; j < nb; j++) {
-            int count = getEdgeCount(i1, j);
-
-            if( ! ((j == i2 && count == 1) || count == 0)) {
-                throw new InvalidOperationException();
+        MoveLog l = begin(MoveLog.CONTRACT, i1, i2);
+        try {
+            //verify i1 exits
+            for(int j = 0; j < nbVertices(); j++) {
+                int count = getEdgeCount(i1, j);
+
+                if( ! ((j == i2 && count == 1) || count == 0)) {
+                    throw new InvalidOperationException();
+                }
             }
-        }
 
-        //verify i2 entries
-        for(int j = 0; j < nb; j++) {
-            int count = getEdgeCount(j, i2);
+            //verify i2 entries
+            for(int j = 0; j < nbVertices(); j++) {
+                int count = getEdgeCount(j, i2);
 
-            if( ! ((j == i1 && count == 1) || count == 0)) {
-                throw new InvalidOperationException();
+                if( ! ((j == i1 && count == 1) || count == 0)) {
+                    throw new InvalidOperationException();
+                }
             }
-        }
 
-        for(int j = 0; j < nb; j++) {
-            setEdgeCount(i1, j, getEdgeCount(i2, j));
+            for(int j = 0; j < nbVertices(); j++) {
+                setEdgeCount(i1, j, getEdgeCount(i2, j));
+            }
+            removeNode(i2);
+        } finally {
+            log = l;
         }
-        removeNode(i2);
     }
 
     /**
-     *
+     * Vue sur les sorties de i, sans copie
      * @param i l'indice correspondant à un sommet du graphe
-     * @return un tableau res tel que res[j] est égal au nombre d'arrêtes de i vers j.
+     * @return une vue v telle que v.get(j) est égal au nombre d'arrêtes de i vers j.
      */
-    public int[] getExits(int i) {
-        int[] res = new int[nb];
+    public LineView exits(int i) {
+        return new LineView(data, i, false, 0);
+    }
 
-        for(int j = 0; j < nb; j++) {
-            res[j] = getEdgeCount(i, j);
-        }
+    /**
+     * Vue sur les entrées de i, sans copie
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return une vue v telle que v.get(j) est égal au nombre d'arrêtes de j vers i.
+     */
+    public LineView entries(int i) {
+        return new LineView(data, i, true, 0);
+    }
 
-        return res;
+    /**
+     *
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return une vue v telle que v.get(j) est égal au nombre d'arrêtes de i vers j
+     * dans le graphe sans la matrice identité.
+     */
+    private LineView exitsWithoutIdentity(int i) {
+        return new LineView(data, i, false, 1);
     }
 
     /**
      *
      * @param i l'indice correspondant à un sommet du graphe
-     * @return un tableau res tel que res[j] est égal au nombre d'arrêtes de i vers j
+     * @return une vue v telle que v.get(j) est égal au nombre d'arrêtes de j vers i
      * dans le graphe sans la matrice identité.
      */
-    private int[] getExitsWithoutIdentity(int i) {
-        int[] res = new int[nb];
+    private LineView entriesWithoutIdentity(int i) {
+        return new LineView(data, i, true, 1);
+    }
 
-        for(int j = 0; j < nb; j++) {
-            res[j] = getEdgeCount(i, j);
-        }
-        res[i]--;
+    /**
+     *
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return un tableau res tel que res[j] est égal au nombre d'arrêtes de i vers j.
+     */
+    public int[] getExits(int i) {
+        return exits(i).toArray();
+    }
 
-        return res;
+    /**
+     * Copie directe de la ligne de la matrice, voir <i>IGraph.copyExits(i, row)</i>
+     * @param i l'indice correspondant à un sommet du graphe
+     * @param row tableau d'au moins nbVertices() valeurs
+     */
+    @Override
+    public void copyExits(int i, int[] row) {
+        data.getRow(i, row);
+    }
+
+    /**
+     * Réponse exacte en temps constant tant que la matrice n'a pas contenu de valeur négative,
+     * voir <i>IGraph.hasExits(i)</i>
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return False si i n'a aucune arrête sortante, True si il peut en avoir
+     */
+    @Override
+    public boolean hasExits(int i) {
+        return !data.isEmptyRow(i);
     }
 
     /**
@@ -261,31 +426,25 @@ public class Graph implements IGraph {
      * @return un tableau res tel que res[j] est égal au nombre d'arrêtes de j vers i.
      */
     public int[] getEntries(int i) {
-        int [] res = new int[nb];
-
-        for(int j = 0; j < nb; j++) {
-            res[j] = getEdgeCount(j, i);
-        }
-
-        return res;
+        return entries(i).toArray();
     }
 
     /**
      *
      * @param i l'indice correspondant à un sommet du graphe
-     * @return un tableau res tel que res[j] est égal au nombre d'arrêtes de j vers i
-     * dans le graphe sans la matrice identité.
+     * @return le nombre d'arrêtes entrantes de i
      */
-    private int[] getEntriesWithoutIdentity(int i) {
-        int [] res = new int[nb];
-
-        for(int j = 0; j < nb; j++) {
-            res[j] = getEdgeCount(j, i);
-        }
-
-        res[i]--;
+    public int sumEntries(int i) {
+        return data.colSum(i);
+    }
 
-        return res;
+    /**
+     *
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return le nombre d'arrêtes sortantes de i
+     */
+    public int sumExits(int i) {
+        return data.rowSum(i);
     }
 
     /**
@@ -297,28 +456,33 @@ public class Graph implements IGraph {
      * @return l'indice du sommet ajouté pour l'opération
      */
     public int splitEntries(int i, int... split) {
-        int i2 = addNode();
-
-        for(int j = 0; j < nb; j++) {
-            int count = getEdgeCount(j, i);
-            int s = 0;
-            if(split.length > j) {
-                s = split[j];
-            }
+        MoveLog l = begin(MoveLog.SPLIT_ENTRIES, i, split);
+        try {
+            int i2 = addNode();
+
+            for(int j = 0; j < nbVertices(); j++) {
+                int count = getEdgeCount(j, i);
+                int s = 0;
+                if(split.length > j) {
+                    s = split[j];
+                }
 
-            if(s > count) {
-                s = count;
-            }
+                if(s > count) {
+                    s = count;
+                }
 
-            int c1 = count - s;
-            int c2 = s;
+                int c1 = count - s;
+                int c2 = s;
 
-            setEdgeCount(j, i, c1);
-            setEdgeCount(j, i2, c2);
+                setEdgeCount(j, i, c1);
+                setEdgeCount(j, i2, c2);
 
-            setEdgeCount(i2, j, getEdgeCount(i, j));
+                setEdgeCount(i2, j, getEdgeCount(i, j));
+            }
+            return i2;
+        } finally {
+            log = l;
         }
-        return i2;
     }
 
     /**
@@ -330,28 +494,33 @@ public class Graph implements IGraph {
      * @return l'indice du sommet ajouté pour l'opération
      */
     public int splitExits(int i, int... split) {
-        int i2 = addNode();
-
-        for(int j = 0; j < nb; j++) {
-            int count = getEdgeCount(i, j);
-            int s = 0;
-            if(split.length > j) {
-                s = split[j];
-            }
+        MoveLog l = begin(MoveLog.SPLIT_EXITS, i, split);
+        try {
+            int i2 = addNode();
+
+            for(int j = 0; j < nbVertices(); j++) {
+                int count = getEdgeCount(i, j);
+                int s = 0;
+                if(split.length > j) {
+                    s = split[j];
+                }
 
-            if(s > count) {
-                s = count;
-            }
+                if(s > count) {
+                    s = count;
+                }
 
-            int c1 = count - s;
-            int c2 = s;
+                int c1 = count - s;
+                int c2 = s;
 
-            setEdgeCount(i, j, c1);
-            setEdgeCount(i2, j, c2);
+                setEdgeCount(i, j, c1);
+                setEdgeCount(i2, j, c2);
 
-            setEdgeCount(j, i2, getEdgeCount(j, i));
+                setEdgeCount(j, i2, getEdgeCount(j, i));
+            }
+            return i2;
+        } finally {
+            log = l;
         }
-        return i2;
     }
 
     /**
@@ -361,25 +530,28 @@ public class Graph implements IGraph {
      * @throws InvalidOperationException Si i1 et i2 n'ont pas les mêmes sorties.
      */
     public void mergeEntries(int i1, int i2) throws InvalidOperationException {
-        if(i1 > i2) {
-            int tmp = i1;
-            i1 = i2;
-            i2 = tmp;
-        }
+        MoveLog l = begin(MoveLog.MERGE_ENTRIES, i1, i2);
+        try {
+            if(i1 > i2) {
+                int tmp = i1;
+                i1 = i2;
+                i2 = tmp;
+            }
 
-        for(int j = 0; j < nb; j++) {
-            if(getEdgeCount(i1, j) != getEdgeCount(i2, j)) {
+            if(!exits(i1).sameAs(exits(i2))) {
                 throw new InvalidOperationException();
             }
-        }
 
-        for(int j = 0; j < nb; j++) {
-            int c1 = getEdgeCount(j, i1);
-            int c2 = getEdgeCount(j, i2);
+            for(int j = 0; j < nbVertices(); j++) {
+                int c1 = getEdgeCount(j, i1);
+                int c2 = getEdgeCount(j, i2);
 
-            setEdgeCount(j, i1, c1 + c2);
+                setEdgeCount(j, i1, c1 + c2);
+            }
+            removeNode(i2);
+        } finally {
+            log = l;
         }
-        removeNode(i2);
     }
 
     /**
@@ -389,25 +561,28 @@ public class Graph implements IGraph {
      * @throws InvalidOperationException Si i1 et i2 n'ont pas les mêmes entrées.
      */
     public void mergeExits(int i1, int i2) throws InvalidOperationException {
-        if(i1 > i2) {
-            int tmp = i1;
-            i1 = i2;
-            i2 = tmp;
-        }
+        MoveLog l = begin(MoveLog.MERGE_EXITS, i1, i2);
+        try {
+            if(i1 > i2) {
+                int tmp = i1;
+                i1 = i2;
+                i2 = tmp;
+            }
 
-        for(int j = 0; j < nb; j++) {
-            if(getEdgeCount(j, i1) != getEdgeCount(j, i2)) {
+            if(!entries(i1).sameAs(entries(i2))) {
                 throw new InvalidOperationException();
             }
-        }
 
-        for(int j = 0; j < nb; j++) {
-            int c1 = getEdgeCount(i1, j);
-            int c2 = getEdgeCount(i2, j);
+            for(int j = 0; j < nbVertices(); j++) {
+                int c1 = getEdgeCount(i1, j);
+                int c2 = getEdgeCount(i2, j);
 
-            setEdgeCount(i1, j, c1 + c2);
+                setEdgeCount(i1, j, c1 + c2);
+            }
+            removeNode(i2);
+        } finally {
+            log = l;
         }
-        removeNode(i2);
     }
 
     /**
@@ -415,14 +590,8 @@ public class Graph implements IGraph {
      * @return une copie du graphe
      */
     public Graph clone() {
-        Graph g = new Graph(nbVertices());
-
-        for(int j = 0; j < nbVertices(); j++) {
-            for(int i = 0; i < nbVertices(); i++) {
-                g.setEdgeCount(j, i, getEdgeCount(j, i));
-            }
-        }
-
+        Graph g = new Graph(0);
+        g.data = data.copy();
         return g;
     }
 
@@ -450,24 +619,32 @@ public class Graph implements IGraph {
      * @throws InvalidOperationException si il n'y a pas d'arrête de i2 vers i1
      */
     public void addExits(int i1, int i2) throws InvalidOperationException {
-        int[] i1exit = getExits(i1);
+        MoveLog l = begin(MoveLog.ADD_EXITS, i1, i2, 1);
+        try {
+            if(getEdgeCount(i1, i2) < 1) {
+                throw new InvalidOperationException();
+            }
 
-        if(i1exit[i2] < 1) {
-            throw new InvalidOperationException();
-        }
+            if(directMoves && i1 != i2) {
+                addRow(i1, i2, 1);
+                return;
+            }
 
-        int[] tmp = zeros(nbVertices() + 1);
+            int[] tmp = zeros(nbVertices() + 1);
 
-        tmp[i2] = 1;
-        int p1 = splitExits(i1, tmp);
-        tmp[i2] = 0;
+            tmp[i2] = 1;
+            int p1 = splitExits(i1, tmp);
+            tmp[i2] = 0;
 
-        tmp[p1] = 1;
-        int p2 = splitEntries(i2, tmp);
+            tmp[p1] = 1;
+            int p2 = splitEntries(i2, tmp);
 
-        flowEquivalence(p1, p2);
+            flowEquivalence(p1, p2);
 
-        mergeExits(i1, p1);
+            mergeExits(i1, p1);
+        } finally {
+            log = l;
+        }
     }
 
     /**
@@ -477,24 +654,32 @@ public class Graph implements IGraph {
      * @throws InvalidOperationException si il n'y a pas d'arrête de i1 vers i2
      */
     public void addEntries(int i1, int i2) throws InvalidOperationException {
-        int[] i1entries = getEntries(i1);
+        MoveLog l = begin(MoveLog.ADD_ENTRIES, i1, i2, 1);
+        try {
+            if(getEdgeCount(i2, i1) < 1) {
+                throw new InvalidOperationException();
+            }
 
-        if(i1entries[i2] < 1) {
-            throw new InvalidOperationException();
-        }
+            if(directMoves && i1 != i2) {
+                addColumn(i1, i2, 1);
+                return;
+            }
 
-        int[] tmp = zeros(nbVertices() + 1);
+            int[] tmp = zeros(nbVertices() + 1);
 
-        tmp[i1] = 1;
-        int p2 = splitExits(i2, tmp);
-        tmp[i1] = 0;
+            tmp[i1] = 1;
+            int p2 = splitExits(i2, tmp);
+            tmp[i1] = 0;
 
-        tmp[p2] = 1;
-        int p1 = splitEntries(i1, tmp);
+            tmp[p2] = 1;
+            int p1 = splitEntries(i1, tmp);
 
-        flowEquivalence(p2, p1);
+            flowEquivalence(p2, p1);
 
-        mergeEntries(i1, p2);
+            mergeEntries(i1, p2);
+        } finally {
+            log = l;
+        }
     }
 
     /**
@@ -504,20 +689,25 @@ public class Graph implements IGraph {
      * @throws InvalidOperationException si une des sorties de i2 n'est pas sur i1
      */
     public void subExits(int i1, int i2) throws InvalidOperationException {
-        int[] i1exits = getExits(i1);
-        int[] i2exits = getExits(i2);
-
-        for (int j = 0; j < nbVertices(); j++) {
-            if(i1exits[j] < i2exits[j]) {
+        MoveLog l = begin(MoveLog.SUB_EXITS, i1, i2, 1);
+        try {
+            if(!exits(i1).dominates(exits(i2))) {
                 throw new InvalidOperationException();
             }
-        }
 
-        int p1 = splitExits(i1, getExits(i2));
-        int p2 = flowEquivalence(p1);
+            if(directMoves && i1 != i2) {
+                addRow(i1, i2, -1);
+                return;
+            }
+
+            int p1 = splitExits(i1, getExits(i2));
+            int p2 = flowEquivalence(p1);
 
-        mergeEntries(i2, p2);
-        mergeExits(i1, p1);
+            mergeEntries(i2, p2);
+            mergeExits(i1, p1);
+        } finally {
+            log = l;
+        }
     }
 
     /**
@@ -527,20 +717,239 @@ public class Graph implements IGraph {
      * @throws InvalidOperationException si une des entrée de i2 n'est pas sur i1
      */
     public void subEntries(int i1, int i2) throws InvalidOperationException {
-        int[] i1entries = getEntries(i1);
-        int[] i2entries = getEntries(i2);
-
-        for (int j = 0; j < nbVertices(); j++) {
-            if(i1entries[j] < i2entries[j]) {
+        MoveLog l = begin(MoveLog.SUB_ENTRIES, i1, i2, 1);
+        try {
+            if(!entries(i1).dominates(entries(i2))) {
                 throw new InvalidOperationException();
             }
+
+            if(directMoves && i1 != i2) {
+                addColumn(i1, i2, -1);
+                return;
+            }
+
+            int p1 = splitEntries(i1, getEntries(i2));
+            int p2 = flowEquivalence(p1);
+
+            mergeEntries(i1, p2);
+            mergeExits(i2, p1);
+        } finally {
+            log = l;
         }
+    }
+
+    /**
+     * Ajoute k fois les sorties de i2 sur i1, avec le même résultat que k appels à <i>addExits(i1, i2)</i>.
+     * Quand i1 et i2 sont différents et que les k étapes sont possibles, le résultat est calculé
+     * directement : la ligne i1 reçoit k fois la ligne i2 et perd k arrêtes vers i2.
+     * Sinon les étapes sont appliquées une par une jusqu'à celle qui échoue.
+     * @param i1 l'indice correspondant à un sommet du graphe
+     * @param i2 l'indice correspondant à un sommet du graphe
+     * @param k nombre d'applications
+     * @throws InvalidOperationException si une des étapes n'est pas possible
+     */
+    public void addExits(int i1, int i2, int k) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.ADD_EXITS, i1, i2, k);
+        try {
+            int a = getEdgeCount(i1, i2);
+            int loop = getEdgeCount(i2, i2);
+
+            if(i1 == i2 || a < 1 || (loop == 0 && a < k)) {
+                for(; k > 0; k--) {
+                    addExits(i1, i2);
+                }
+                return;
+            }
+
+            addRow(i1, i2, k);
+        } finally {
+            log = l;
+        }
+    }
 
-        int p1 = splitEntries(i1, getEntries(i2));
-        int p2 = flowEquivalence(p1);
+    /**
+     * Ajoute k fois les entrées de i2 sur i1, avec le même résultat que k appels à <i>addEntries(i1, i2)</i>.
+     * Quand i1 et i2 sont différents et que les k étapes sont possibles, le résultat est calculé
+     * directement : la colonne i1 reçoit k fois la colonne i2 et perd k arrêtes depuis i2.
+     * Sinon les étapes sont appliquées une par une jusqu'à celle qui échoue.
+     * @param i1 l'indice correspondant à un sommet du graphe
+     * @param i2 l'indice correspondant à un sommet du graphe
+     * @param k nombre d'applications
+     * @throws InvalidOperationException si une des étapes n'est pas possible
+     */
+    public void addEntries(int i1, int i2, int k) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.ADD_ENTRIES, i1, i2, k);
+        try {
+            int a = getEdgeCount(i2, i1);
+            int loop = getEdgeCount(i2, i2);
+
+            if(i1 == i2 || a < 1 || (loop == 0 && a < k)) {
+                for(; k > 0; k--) {
+                    addEntries(i1, i2);
+                }
+                return;
+            }
 
-        mergeEntries(i1, p2);
-        mergeExits(i2, p1);
+            addColumn(i1, i2, k);
+        } finally {
+            log = l;
+        }
+    }
+
+    /**
+     * Soustrait k fois les sorties de i2 sur i1, avec le même résultat que k appels à <i>subExits(i1, i2)</i>.
+     * Quand i1 et i2 sont différents et que les k étapes sont possibles, le résultat est calculé
+     * directement : la ligne i1 perd k fois la ligne i2 et gagne k arrêtes vers i2.
+     * Sinon les étapes sont appliquées une par une jusqu'à celle qui échoue.
+     * @param i1 l'indice correspondant à un sommet du graphe
+     * @param i2 l'indice correspondant à un sommet du graphe
+     * @param k nombre d'applications
+     * @throws InvalidOperationException si une des étapes n'est pas possible
+     */
+    public void subExits(int i1, int i2, int k) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.SUB_EXITS, i1, i2, k);
+        try {
+            if(i1 == i2 || subExitsCount(i1, i2, k) < k) {
+                for(; k > 0; k--) {
+                    subExits(i1, i2);
+                }
+                return;
+            }
+
+            addRow(i1, i2, -k);
+        } finally {
+            log = l;
+        }
+    }
+
+    /**
+     * Soustrait k fois les entrées de i2 sur i1, avec le même résultat que k appels à <i>subEntries(i1, i2)</i>.
+     * Quand i1 et i2 sont différents et que les k étapes sont possibles, le résultat est calculé
+     * directement : la colonne i1 perd k fois la colonne i2 et gagne k arrêtes depuis i2.
+     * Sinon les étapes sont appliquées une par une jusqu'à celle qui échoue.
+     * @param i1 l'indice correspondant à un sommet du graphe
+     * @param i2 l'indice correspondant à un sommet du graphe
+     * @param k nombre d'applications
+     * @throws InvalidOperationException si une des étapes n'est pas possible
+     */
+    public void subEntries(int i1, int i2, int k) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.SUB_ENTRIES, i1, i2, k);
+        try {
+            if(i1 == i2 || subEntriesCount(i1, i2, k) < k) {
+                for(; k > 0; k--) {
+                    subEntries(i1, i2);
+                }
+                return;
+            }
+
+            addColumn(i1, i2, -k);
+        } finally {
+            log = l;
+        }
+    }
+
+    /**
+     * Pour i1 différent de i2, chaque soustraction des sorties de i2 sur i1 retire la ligne i2 de la
+     * ligne i1 puis ajoute une arrête de i1 vers i2 : la ligne i2 ne change pas.
+     * @param i1 l'indice correspondant à un sommet du graphe
+     * @param i2 l'indice correspondant à un sommet du graphe, différent de i1
+     * @param max nombre maximum de soustractions
+     * @return le nombre de soustractions successives des sorties de i2 sur i1 possibles, au plus max
+     */
+    private int subExitsCount(int i1, int i2, int max) {
+        int res = max;
+        for(int j = 0; j < nbVertices() && res > 0; j++) {
+            int b = getEdgeCount(i2, j);
+            if(j != i2 && b > 0) {
+                res = Math.min(res, getEdgeCount(i1, j) / b);
+            }
+        }
+        return Math.min(res, loopBound(getEdgeCount(i1, i2), getEdgeCount(i2, i2), max));
+    }
+
+    /**
+     * Même calcul que <i>subExitsCount</i> sur les colonnes
+     * @param i1 l'indice correspondant à un sommet du graphe
+     * @param i2 l'indice correspondant à un sommet du graphe, différent de i1
+     * @param max nombre maximum de soustractions
+     * @return le nombre de soustractions successives des entrées de i2 sur i1 possibles, au plus max
+     */
+    private int subEntriesCount(int i1, int i2, int max) {
+        int res = max;
+        for(int j = 0; j < nbVertices() && res > 0; j++) {
+            int b = getEdgeCount(j, i2);
+            if(j != i2 && b > 0) {
+                res = Math.min(res, getEdgeCount(j, i1) / b);
+            }
+        }
+        return Math.min(res, loopBound(getEdgeCount(i2, i1), getEdgeCount(i2, i2), max));
+    }
+
+    /**
+     * L'étape t (à partir de 0) d'une soustraction répétée demande a + t &gt;= (t + 1) * loop
+     * pour la case qui relie i1 et i2.
+     * @param a nombre d'arrêtes entre i1 et i2
+     * @param loop nombre de boucles sur i2
+     * @param max nombre maximum d'étapes
+     * @return le nombre d'étapes possibles pour cette case, au plus max
+     */
+    private static int loopBound(int a, int loop, int max) {
+        if(loop == 0) {
+            return max;
+        }
+        if(a < loop) {
+            return 0;
+        }
+        if(loop == 1) {
+            return max;
+        }
+        return Math.min(max, (a - 1) / (loop - 1));
+    }
+
+    /**
+     * Ajoute f fois la ligne i2 à la ligne i1 et retire f arrêtes de i1 vers i2 :
+     * c'est l'effet de f ajouts des sorties de i2 sur i1 (f soustractions si f est négatif).
+     * @param i1 l'indice correspondant à un sommet du graphe
+     * @param i2 l'indice correspondant à un sommet du graphe, différent de i1
+     * @param f un entier
+     */
+    private void addRow(int i1, int i2, int f) {
+        for(int j = 0; j < nbVertices(); j++) {
+            int b = getEdgeCount(i2, j);
+            if(b != 0) {
+                setEdgeCount(i1, j, getEdgeCount(i1, j) + f * b);
+            }
+        }
+        setEdgeCount(i1, i2, getEdgeCount(i1, i2) - f);
+        skipNodes(Math.abs(f));
+    }
+
+    /**
+     * Ajoute f fois la colonne i2 à la colonne i1 et retire f arrêtes de i2 vers i1 :
+     * c'est l'effet de f ajouts des entrées de i2 sur i1 (f soustractions si f est négatif).
+     * @param i1 l'indice correspondant à un sommet du graphe
+     * @param i2 l'indice correspondant à un sommet du graphe, différent de i1
+     * @param f un entier
+     */
+    private void addColumn(int i1, int i2, int f) {
+        for(int j = 0; j < nbVertices(); j++) {
+            int b = getEdgeCount(j, i2);
+            if(b != 0) {
+                setEdgeCount(j, i1, getEdgeCount(j, i1) + f * b);
+            }
+        }
+        setEdgeCount(i2, i1, getEdgeCount(i2, i1) - f);
+        skipNodes(Math.abs(f));
+    }
+
+    /**
+     * Les opérations par composition créent deux sommets temporaires à chaque étape : les
+     * identifiants qu'elles auraient consommés sont réservés pour que les sommets ajoutés
+     * ensuite aient les mêmes identifiants.
+     * @param k nombre d'étapes
+     */
+    private void skipNodes(int k) {
+        data.nextId += 2 * k;
     }
 
     /**
@@ -550,20 +959,18 @@ public class Graph implements IGraph {
      */
     public void removeLooplessNodes() throws InvalidOperationException {
         for(int j = nbVertices() - 1; j >= 0; j--) {
+            checkInterrupted();
             if(getEdgeCount(j, j) == 0) {
-                int se = Calcul.sum(getEntries(j));
-                int sx = Calcul.sum(getExits(j));
+                int se = sumEntries(j);
+                int sx = sumExits(j);
 
                 for(int i = 0; i < nbVertices(); i++) {
+                    // j n'a pas de boucle : chaque étape retire une des arrêtes entre i et j
                     if(se > sx) {
-                        while (getEdgeCount(j, i) > 0) {
-                            addEntries(i, j);
-                        }
+                        addEntries(i, j, getEdgeCount(j, i));
                     }
                     else {
-                        while (getEdgeCount(i, j) > 0) {
-                            addExits(i, j);
-                        }
+                        addExits(i, j, getEdgeCount(i, j));
                     }
                 }
 
@@ -579,12 +986,7 @@ public class Graph implements IGraph {
      * @return True la soustraction est possible False sinon
      */
     private boolean testSub(int i1, int i2) {
-        for (int j = 0; j < nbVertices(); j++) {
-            if(getEdgeCount(j, i1) < getEdgeCount(j, i2)) {
-                return false;
-            }
-        }
-        return true;
+        return entries(i1).dominates(entries(i2));
     }
 
     /**
@@ -592,6 +994,10 @@ public class Graph implements IGraph {
      * @throws InvalidOperationException
      */
     public void reduceAll() throws InvalidOperationException{
+        cached(ReductionCache.REDUCE_ALL, this::reduceAllLines);
+    }
+
+    private void reduceAllLines() throws InvalidOperationException {
         for(int i=nbVertices()-1; i>=0; i--) {
             reduceLine(i);
         }
@@ -605,29 +1011,16 @@ public class Graph implements IGraph {
     public void reduceLine(int line) throws InvalidOperationException {
         boolean continu = true;
         while(continu) {
-            int[] exits = getExitsWithoutIdentity(line);
-            int min = -1;
-            int max = -1;
-            for (int i = 0; i < nbVertices(); i++) {
-                if (exits[i] != 0) {
-                    if (min == -1 || exits[i] < exits[min]) {
-                        min = i;
-                    }
-                }
-            }
-            for (int i = 0; i < nbVertices(); i++) {
-                if (exits[i] != 0 && i != min) {
-                    if (max == -1 || exits[i] > exits[max]) {
-                        max = i;
-                    }
-                }
-            }
+            checkInterrupted();
+            LineView exits = exitsWithoutIdentity(line);
+            int min = exits.argMin();
+            int max = exits.argMax(min);
             if(max!=-1) {
                 /*System.out.println(exits[min]+ " "+ exits[max]);
                 if(exits[min]<1){
                     GraphIO.printGraph(this);
                 }*/
-                int old = exits[max];
+                int old = exits.get(max);
                 reduce(line, min, max);
 
                 if(getEdgeCountWithoutIdentity(line, max)==old){
@@ -695,52 +1088,50 @@ public class Graph implements IGraph {
                 if(minEntries[i] * nb > dstEntries[i]) {
                     double k = Math.ceil((double)(nb * minEntries[i] - dstEntries[i]) / (dstEntries[line] - minEntries[line] * nb));
 
-                    while (k > 0) {
-                        addExits(i, line);
-                        k--;
+                    if(k > 0) {
+                        addExits(i, line, (int) k);
                     }
                 }
             }
 
-            for(int i = 0; i < nb && testSub(dst, min); i++) {
-                subEntries(dst, min);
+            if(dst == min) {
+                for(int i = 0; i < nb && testSub(dst, min); i++) {
+                    subEntries(dst, min);
+                }
+            }
+            else {
+                subEntries(dst, min, subEntriesCount(dst, min, nb));
             }
         }
 
         return nb;
     }
 
-
     public void putZeroOnLines() throws InvalidOperationException {
+        cached(ReductionCache.ZERO_LINES, this::zeroOnLines);
+    }
+
+    private void zeroOnLines() throws InvalidOperationException {
         for (int j = nbVertices() - 1; j >= 0; j--) {
-            int out[] = getExitsWithoutIdentity(j);
-            int notzero = 0;
-            int min = -1;
-            for (int i = 0; i < nbVertices(); i++) {
-                if (out[i] != 0) {
-                    notzero++;
-                    if (min == -1 || out[min] > out[i]) {
-                        min = i;
-                    }
-                }
-            }
+            LineView out = exitsWithoutIdentity(j);
+            int notzero = out.countNonZero();
+            int min = out.argMin();
             while (notzero > 1) {
+                checkInterrupted();
                 for (int i = nbVertices() - 1; i >= 0; i--) {
                     int a = getEdgeCountWithoutIdentity(j, i);
                     if (i != min && a != 0) {
                         int b = getEdgeCountWithoutIdentity(j, min);
                         while (a>b){
+                            checkInterrupted();
                             for (int l = nbVertices() - 1; l >= 0; l--) {
                                 if (l != j) {
 
                                     int c = getEdgeCountWithoutIdentity(l, i);
                                     int d = getEdgeCountWithoutIdentity(l, min);
 
-                                    while (c<d) {
-                                        c += a;
-                                        d += b;
-                                        //GraphIO.printGraph(this);
-                                        addExits(l, j);
+                                    if (c<d) {
+                                        addExits(l, j, steps(d - c, a - b));
                                     }
                                 }
                             }
@@ -776,10 +1167,8 @@ public class Graph implements IGraph {
                                         int c = getEdgeCountWithoutIdentity(l, i);
                                         int d = getEdgeCountWithoutIdentity(l, min);
 
-                                        while (c<d) {
-                                            addExits(l, bis);
-                                            c+=cbis;
-                                            d+=dbis;
+                                        if (c<d) {
+                                            addExits(l, bis, steps(d - c, cbis - dbis));
                                         }
                                     }
                                 }
@@ -802,33 +1191,29 @@ public class Graph implements IGraph {
     }
 
     public void putZeroOnColumns() throws InvalidOperationException {
+        cached(ReductionCache.ZERO_COLUMNS, this::zeroOnColumns);
+    }
+
+    private void zeroOnColumns() throws InvalidOperationException {
         for (int j = nbVertices() - 1; j >= 0; j--) {
-            int in[] = getEntriesWithoutIdentity(j);
-            int notzero = 0;
-            int min = -1;
-            for (int i = 0; i < nbVertices(); i++) {
-                if (in[i] != 0) {
-                    notzero++;
-                    if (min == -1 || in[min] > in[i]) {
-                        min = i;
-                    }
-                }
-            }
+            LineView in = entriesWithoutIdentity(j);
+            int notzero = in.countNonZero();
+            int min = in.argMin();
             while (notzero > 1) {
+                checkInterrupted();
                 for (int i = nbVertices() - 1; i >= 0; i--) {
                     int a = getEdgeCountWithoutIdentity(i, j);
                     if (i != min && a != 0) {
                         int b = getEdgeCountWithoutIdentity(min, j);
                         while (a>b){
+                            checkInterrupted();
                             for (int l = nbVertices() - 1; l >= 0; l--) {
                                 if (l != j) {
 
                                     int c = getEdgeCountWithoutIdentity(i,l);
                                     int d = getEdgeCountWithoutIdentity(min, l);
-                                    while (c-d<0) {
-                                        c += a;
-                                        d += b;
-                                        addEntries(l, j);
+                                    if (c-d<0) {
+                                        addEntries(l, j, steps(d - c, a - b));
                                     }
                                 }
                             }
@@ -864,10 +1249,8 @@ public class Graph implements IGraph {
                                         int c = getEdgeCountWithoutIdentity(i, l);
                                         int d = getEdgeCountWithoutIdentity(min, l);
 
-                                        while (c<d) {
-                                            addEntries(l, bis);
-                                            c+=cbis;
-                                            d+=dbis;
+                                        if (c<d) {
+                                            addEntries(l, bis, steps(d - c, cbis - dbis));
                                         }
                                     }
                                 }
@@ -889,6 +1272,54 @@ public class Graph implements IGraph {
         }
     }
 
+    /**
+     * Appelée à chaque tour des boucles de réduction, qui peuvent ne jamais se terminer sur certains
+     * graphes : une réduction lancée dans un thread qui a été interrompu (par exemple par le timeout
+     * de Batch) s'arrête, le statut d'interruption du thread est conservé.
+     * @throws CancellationException si le thread courant a été interrompu
+     */
+    static void checkInterrupted() {
+        if(Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("reduction interrupted");
+        }
+    }
+
+    /**
+     *
+     * @param gap un entier positif
+     * @param step un entier strictement positif
+     * @return le nombre de fois qu'il faut ajouter step pour combler gap
+     */
+    private static int steps(int gap, int step) {
+        return (gap + step - 1) / step;
+    }
+
+    /**
+     * Exécute reduction sur le graphe, ou restaure son résultat depuis <i>ReductionCache.getShared()</i>
+     * si ce cache est activé et que la même matrice a déjà été réduite
+     * @param op le type de réduction
+     * @param reduction le calcul
+     * @throws InvalidOperationException si le calcul échoue
+     */
+    private void cached(int op, ReductionCache.Reduction reduction) throws InvalidOperationException {
+        ReductionCache cache = ReductionCache.getShared();
+        // un résultat restauré ne peut pas être décrit dans le journal
+        if(cache == null || log != null) {
+            reduction.run();
+            return;
+        }
+
+        ReductionCache.Key k = new ReductionCache.Key(op, data, null);
+        ReductionCache.Result r = cache.get(k);
+        if(r != null) {
+            data = r.matrix(k);
+        }
+        else {
+            reduction.run();
+            cache.store(k, data, null);
+        }
+    }
+
     public void putZeros() throws InvalidOperationException {
         putZeroOnLines();
         System.out.println("0 sur les lignes : ");
@@ -17,31 +17,39 @@ limitations under the License.
 package lib.graph;
 
 import lib.exceptions.InvalidOperationException;
-import lib.math.Calcul;
 
 import java.util.*;
 
 public class GraphBW implements IGraph {
-    ArrayList<Integer> data;
-    ArrayList<Color> colors;
-    int nb;
+    static final byte WHITE = 0;
+    static final byte BLACK = 1;
+
+    AdjacencyMatrix data;
+    byte[] colors;
+
+    /**
+     * somme des colors[i] * colorKey(i), ajoutée à l'empreinte de la matrice
+     */
+    private long colorHash;
+
+    /**
+     * modifications à transmettre à l'historique dans lequel le graphe a été enregistré en dernier,
+     * null si il n'y en a pas ou si l'historique est passé à un autre graphe
+     */
+    History.Journal journal;
+
+    /**
+     * journal des opérations, null si elles ne sont pas enregistrées
+     */
+    private MoveLog log;
 
     /**
      *
      * @param n nombre de sommets
      */
     public GraphBW(int n) {
-        nb = n;
-        data = new ArrayList<Integer>(n * n);
-        colors = new ArrayList<>(n);
-
-        for(int i = 0; i < n * n; i++) {
-            data.add(0);
-        }
-
-        for(int i = 0; i < n; i++) {
-            colors.add(Color.White);
-        }
+        data = new AdjacencyMatrix(n);
+        colors = new byte[n];
     }
 
     /**
@@ -49,26 +57,20 @@ public class GraphBW implements IGraph {
      * @return une copie du graphe BW
      */
     public GraphBW clone() {
-        GraphBW g = new GraphBW(nbVertices());
-
-        for(int i = 0; i < nbVertices(); i++) {
-            g.colors.set(i, colors.get(i));
-        }
-
-        for(int i = 0; i < data.size(); i++) {
-            g.data.set(i, data.get(i));
-        }
-
+        GraphBW g = new GraphBW(0);
+        g.data = data.copy();
+        g.colors = Arrays.copyOf(colors, nbVertices());
+        g.colorHash = colorHash;
         return g;
     }
 
     /**
      *
-     * @param g instance de Graph
+     * @param g instance de Graph, non modifiée
      * @return une instance de GraphBW créée à partir de g
      */
     public static GraphBW fromGraph(Graph g) {
-        return fromGraphUnsafe(g.clone());
+        return stretch(g);
     }
 
     /**
@@ -78,35 +80,173 @@ public class GraphBW implements IGraph {
      * @return une instance de GraphBW créée à partir de g
      */
     public static GraphBW fromGraphUnsafe(Graph g) {
+        // les opérations doivent être enregistrées une par une dans le journal de g
+        if(g.getMoveLog() != null) {
+            return stretchEach(g);
+        }
+
+        GraphBW res = stretch(g);
+        g.data = res.data;
+        return res;
+    }
+
+    /**
+     * Construit directement le résultat de <i>Graph.flowEquivalence(i)</i> appliqué à chaque sommet i :
+     * le sommet n + i reçoit les sorties de i et i n'a plus qu'une arrête, vers n + i. Les sommets
+     * n + i sont noirs et reçoivent les identifiants que leur aurait donnés <i>addNode</i>.
+     * La matrice de 2n sommets est allouée une seule fois et remplie en O(n^2).
+     * @param g instance de Graph, non modifiée
+     * @return une instance de GraphBW créée à partir de g
+     */
+    private static GraphBW stretch(Graph g) {
         int n = g.nbVertices();
+        AdjacencyMatrix m = new AdjacencyMatrix(2 * n);
+        byte[] c = new byte[2 * n];
+
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) {
+                int e = g.getEdgeCount(i, j);
+                if(e != 0) {
+                    m.set(n + i, j, e);
+                }
+            }
+            m.set(i, n + i, 1);
+
+            m.ids[i] = g.data.id(i);
+            m.ids[n + i] = g.data.nextId + i;
+            c[n + i] = BLACK;
+        }
+        m.nextId = g.data.nextId + n;
 
-        ArrayList<Color> c = new ArrayList<>(2 * n);
+        GraphBW res = new GraphBW(0);
+        res.data = m;
+        res.colors = c;
+        res.rehashColors();
+
+        return res;
+    }
+
+    /**
+     * Version de <i>fromGraphUnsafe</i> qui passe par <i>Graph.flowEquivalence(i)</i> pour chaque sommet
+     * @param g instance de Graph, modifiée
+     * @return une instance de GraphBW créée à partir de g
+     */
+    private static GraphBW stretchEach(Graph g) {
+        int n = g.nbVertices();
+
+        byte[] c = new byte[2 * n];
 
         for(int i = 0; i < n; i++) {
             //if(sum(g.getEntries(i)) > 1 && sum(g.getExits(i)) > 1) {
                 g.flowEquivalence(i);
-                c.add(Color.White);
+                c[i] = WHITE;
             //}
         }
 
         for (int i = n; i < 2 * n; i++) {
-            c.add(Color.Black);
+            c[i] = BLACK;
         }
 
         GraphBW res = new GraphBW(0);
         res.data = g.data;
         res.colors = c;
-        res.nb = g.nb;
+        res.rehashColors();
 
         return res;
     }
 
+    /**
+     * Journal qui enregistre les opérations appliquées sur le graphe, null si il n'y en a pas
+     * @param log un MoveLog
+     */
+    public void setMoveLog(MoveLog log) {
+        this.log = log;
+    }
+
+    /**
+     *
+     * @return le journal des opérations du graphe, null si il n'y en a pas
+     */
+    public MoveLog getMoveLog() {
+        return log;
+    }
+
+    /**
+     * Enregistre une opération dans le journal et suspend le journal pendant qu'elle s'exécute,
+     * pour que les opérations qu'elle appelle ne soient pas enregistrées.
+     * Le journal doit être rétabli avec la valeur renvoyée à la fin de l'opération.
+     * @return le journal à rétablir
+     */
+    private MoveLog begin(int op, int a) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, a);
+            log = null;
+        }
+        return l;
+    }
+
+    private MoveLog begin(int op, int a, int b) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, a, b);
+            log = null;
+        }
+        return l;
+    }
+
+    private MoveLog begin(int op, int a, int b, int c) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, a, b, c);
+            log = null;
+        }
+        return l;
+    }
+
+    private MoveLog begin(int op, int a, int[] list) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, a, list);
+            log = null;
+        }
+        return l;
+    }
+
+    private MoveLog begin(int op, int[] l1, int[] l2) {
+        MoveLog l = log;
+        if(l != null) {
+            l.add(op, l1, l2);
+            log = null;
+        }
+        return l;
+    }
+
     /**
      *
      * @return le nombre de sommets
      */
     public int nbVertices() {
-        return nb;
+        return data.size();
+    }
+
+    /**
+     * Les indices des sommets sont toujours 0..nbVertices()-1 et se décalent quand un sommet
+     * est supprimé. L'identifiant d'un sommet, lui, ne change pas tant que le sommet existe.
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return l'identifiant stable du sommet i
+     */
+    public int getId(int i) {
+        return data.id(i);
+    }
+
+    /**
+     *
+     * @param id un identifiant renvoyé par <i>getId(int i)</i>
+     * @return l'indice actuel du sommet id, -1 si il a été supprimé
+     */
+    public int indexOf(int id) {
+        return data.indexOf(id);
     }
 
     /**
@@ -116,7 +256,37 @@ public class GraphBW implements IGraph {
      * @return le nombre d'arrêtes de i1 vers i2
      */
     public int getEdgeCount(int i1, int i2) {
-        return data.get(i1 * nb + i2);
+        return data.get(i1, i2);
+    }
+
+    /**
+     * Empreinte tenue à jour à chaque modification, voir <i>IGraph.getHash()</i>.
+     * Les sommets noirs y contribuent aussi : deux graphes BW de même matrice et de mêmes couleurs
+     * ont la même empreinte, et un graphe tout blanc a la même empreinte que le Graph de même matrice.
+     * @return l'empreinte du graphe
+     */
+    @Override
+    public long getHash() {
+        return data.hash() + colorHash;
+    }
+
+    /**
+     *
+     * @param i l'indice d'un sommet
+     * @return la clé de la couleur du sommet i dans l'empreinte, distincte de celles des cases
+     */
+    private static long colorKey(int i) {
+        return AdjacencyMatrix.mix(~(long) i);
+    }
+
+    /**
+     * Recalcule la partie de l'empreinte due aux couleurs, après un remplacement direct de colors
+     */
+    void rehashColors() {
+        colorHash = 0;
+        for(int i = 0; i < nbVertices(); i++) {
+            colorHash += colors[i] * colorKey(i);
+        }
     }
 
     /**
@@ -126,22 +296,20 @@ public class GraphBW implements IGraph {
      * @param n nouvelle valeur
      */
     public void setEdgeCount(int i1, int i2, int n) throws InvalidOperationException {
-        //int[] i1entry = getEntries(i1);
-        int[] i1exit = getExits(i1);
-        int[] i2entry = getEntries(i2);
-        //int[] i2exit = getExits(i2);
-
-        i1exit[i2] = n;
-        i2entry[i1] = n;
+        if(log != null) {
+            log.add(MoveLog.BW_SET_EDGE, i1, i2, n);
+        }
+        int d = n - getEdgeCount(i1, i2);
 
-        if(getColor(i1) == Color.White && Calcul.sum(i1exit) > 1) {
+        if(colors[i1] == WHITE && data.rowSum(i1) + d > 1) {
             throw new InvalidOperationException();
         }
-        if(getColor(i2) == Color.Black && Calcul.sum(i2entry) > 1) {
+        if(colors[i2] == BLACK && data.colSum(i2) + d > 1) {
             throw new InvalidOperationException();
         }
 
-        data.set(i1 * nb + i2, n);
+        data.set(i1, i2, n);
+        writeJournal(History.SET, i1, i2, n);
     }
 
     /**
@@ -150,7 +318,16 @@ public class GraphBW implements IGraph {
      * @return la couleur du sommet i
      */
     public Color getColor(int i) {
-        return colors.get(i);
+        return colors[i] == BLACK ? Color.Black : Color.White;
+    }
+
+    /**
+     *
+     * @param c une couleur
+     * @return la valeur stockée dans colors pour la couleur c
+     */
+    private static byte pack(Color c) {
+        return c == Color.Black ? BLACK : WHITE;
     }
 
     /**
@@ -160,13 +337,40 @@ public class GraphBW implements IGraph {
      * @throws InvalidOperationException si la c est incohérent par rapport au entrées et sorties de i
      */
     public void setColor(int i, Color c) throws InvalidOperationException {
-        if(c == Color.Black && Calcul.sum(getEntries(i)) != 1) {
+        if(log != null) {
+            log.add(MoveLog.BW_SET_COLOR, i, pack(c));
+        }
+        if(c == Color.Black && sumEntries(i) != 1) {
             throw new InvalidOperationException();
         }
-        else if(c == Color.White && Calcul.sum(getExits(i)) != 1) {
+        else if(c == Color.White && sumExits(i) != 1) {
             throw new InvalidOperationException();
         }
-        colors.set(i, c);
+        paint(i, i + 1, pack(c));
+    }
+
+    /**
+     * Transmet une modification au journal de l'historique, qui est abandonné si l'historique a été
+     * libéré entre-temps
+     */
+    private void writeJournal(int op, int a, int b, int c) {
+        if(journal != null && !journal.log(op, a, b, c)) {
+            journal = null;
+        }
+    }
+
+    /**
+     * Met à jour la couleur des sommets from à to - 1 sans vérification
+     * @param from indice du premier sommet
+     * @param to indice qui suit le dernier sommet
+     * @param c couleur (WHITE ou BLACK)
+     */
+    void paint(int from, int to, byte c) {
+        for(int i = from; i < to; i++) {
+            colorHash += (c - colors[i]) * colorKey(i);
+        }
+        Arrays.fill(colors, from, to, c);
+        writeJournal(History.COLOR, from, to, c);
     }
 
     /**
@@ -201,34 +405,95 @@ public class GraphBW implements IGraph {
      * @return l'indice du sommet ajouté
      */
     public int addNode(Color c) {
-        data.ensureCapacity((nb + 1) * (nb + 1));
-        for(int i = nb; i <= data.size(); i += nb + 1) {
-            data.add(i, 0);
+        return addNodes(c, 1);
+    }
+
+    /**
+     * Ajoute k sommets de couleur c dans le graphe, la matrice n'est agrandie qu'une seule fois
+     * @param c une couleur
+     * @param k nombre de sommets à ajouter
+     * @return l'indice du premier sommet ajouté, les suivants ont des indices consécutifs
+     */
+    public int addNodes(Color c, int k) {
+        if(log != null) {
+            log.add(MoveLog.BW_ADD_NODES, pack(c), k);
+        }
+        writeJournal(History.ADD, k, pack(c), 0);
+        return growNodes(pack(c), k);
+    }
+
+    /**
+     * Ajoute k sommets de couleur c sans les enregistrer dans le journal
+     * @param c couleur (WHITE ou BLACK)
+     * @param k nombre de sommets à ajouter
+     * @return l'indice du premier sommet ajouté
+     */
+    int growNodes(byte c, int k) {
+        int first = data.addNodes(k);
+        if(colors.length < first + k) {
+            colors = Arrays.copyOf(colors, Math.max(first + k, 2 * colors.length));
         }
-        nb++;
-        for(int i = 0; i < nb; i++) {
-            data.add(0);
+        Arrays.fill(colors, first, first + k, c);
+        for(int i = first; i < first + k; i++) {
+            colorHash += c * colorKey(i);
         }
-        colors.add(c);
-        return nb - 1;
+        return first;
     }
 
     /**
-     * Ajoute une copie du graph BW dans gc et supprime le sommet i
-     * @param gc liste de GraphBW
+     * Supprime le sommet i sans l'enregistrer dans le journal
      * @param i l'indice du sommet à supprimer
      */
-    public void removeNode(List<GraphBW> gc, int i) {
-        gc.add(this.clone());
+    void deleteNode(int i) {
+        data.removeNode(i);
+        for(int k = i; k < nbVertices(); k++) {
+            colorHash += (colors[k + 1] - colors[k]) * colorKey(k);
+        }
+        colorHash -= colors[nbVertices()] * colorKey(nbVertices());
+        System.arraycopy(colors, i + 1, colors, i, nbVertices() - i);
+    }
 
-        for(int j = 0; j < nb; j++) {
-            data.remove(i * nb);
+    /**
+     * Transmet l'état actuel du graphe à gc
+     * @param gc destination des étapes, null pour ne rien enregistrer
+     */
+    private void record(StepSink gc) {
+        if(gc != null) {
+            gc.record(this);
         }
-        for(int j = i; j < data.size(); j += nb - 1) {
-            data.remove(j);
+    }
+
+    /**
+     * Ajoute une copie du graph BW dans gc et supprime le sommet i
+     * @param gc destination des étapes
+     * @param i l'indice du sommet à supprimer
+     */
+    public void removeNode(StepSink gc, int i) {
+        if(log != null) {
+            log.add(MoveLog.BW_REMOVE_NODE, i);
         }
-        colors.remove(i);
-        nb--;
+        record(gc);
+
+        writeJournal(History.REMOVE, i, 0, 0);
+        deleteNode(i);
+    }
+
+    /**
+     * Vue sur les sorties de i, sans copie
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return une vue v telle que v.get(j) est égal au nombre d'arrêtes de i vers j.
+     */
+    public LineView exits(int i) {
+        return new LineView(data, i, false, 0);
+    }
+
+    /**
+     * Vue sur les entrées de i, sans copie
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return une vue v telle que v.get(j) est égal au nombre d'arrêtes de j vers i.
+     */
+    public LineView entries(int i) {
+        return new LineView(data, i, true, 0);
     }
 
     /**
@@ -237,13 +502,28 @@ public class GraphBW implements IGraph {
      * @return un tableau res tel que res[j] est égal au nombre d'arrêtes de i vers j.
      */
     public int[] getExits(int i) {
-        int[] res = new int[nb];
+        return exits(i).toArray();
+    }
 
-        for(int j = 0; j < nb; j++) {
-            res[j] = getEdgeCount(i, j);
-        }
+    /**
+     * Copie directe de la ligne de la matrice, voir <i>IGraph.copyExits(i, row)</i>
+     * @param i l'indice correspondant à un sommet du graphe
+     * @param row tableau d'au moins nbVertices() valeurs
+     */
+    @Override
+    public void copyExits(int i, int[] row) {
+        data.getRow(i, row);
+    }
 
-        return res;
+    /**
+     * Réponse exacte en temps constant tant que la matrice n'a pas contenu de valeur négative,
+     * voir <i>IGraph.hasExits(i)</i>
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return False si i n'a aucune arrête sortante, True si il peut en avoir
+     */
+    @Override
+    public boolean hasExits(int i) {
+        return !data.isEmptyRow(i);
     }
 
     /**
@@ -252,203 +532,235 @@ public class GraphBW implements IGraph {
      * @return un tableau res tel que res[j] est égal au nombre d'arrêtes de j vers i.
      */
     public int[] getEntries(int i) {
-        int [] res = new int[nb];
+        return entries(i).toArray();
+    }
 
-        for(int j = 0; j < nb; j++) {
-            res[j] = getEdgeCount(j, i);
-        }
+    /**
+     *
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return le nombre d'arrêtes entrantes de i
+     */
+    public int sumEntries(int i) {
+        return data.colSum(i);
+    }
 
-        return res;
+    /**
+     *
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return le nombre d'arrêtes sortantes de i
+     */
+    public int sumExits(int i) {
+        return data.rowSum(i);
     }
 
     /**
      * Ajoute une copie du graphe dans gc puis divise le sommet i1 en suivant la règle R2
      * si le sommet est de couleur <i>Black</i> on divise ses sorties si il est <i>White</i> on divise ses entrée
-     * @param gc liste de GraphBW
+     * @param gc destination des étapes
      * @param i1 indice correspondant à un sommet du graphe
      * @param split masque correspondant aux entrées ou sorties que l'on souhaites transférer de i1 au nouveau sommet
      * @return l'indice du sommet créé par l'opération
      * @throws InvalidOperationException si split contient une valeur négative
      */
-    public int split(List<GraphBW> gc, int i1, int... split) throws InvalidOperationException {
-    //public int split(int i1, int... split) throws InvalidOperationException {
-        gc.add(this.clone());
-
-        int[] entries = getEntries(i1);
-        //int[] exits = getExits(i);
-        int i2 = addNode(getColor(i1));
+    public int split(StepSink gc, int i1, int... split) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_SPLIT, i1, split);
+        try {
+        //public int split(int i1, int... split) throws InvalidOperationException {
+            record(gc);
+
+            int[] entries = getEntries(i1);
+            //int[] exits = getExits(i);
+            int i2 = addNode(getColor(i1));
+
+            if(getColor(i1) == Color.Black) {
+                addEdges(i1, i2, 1);
+                for(int j = 0; j < nbVertices(); j++) {
+                    int tmp = getEdgeCount(i1, j);
+
+                    int s = 0;
+                    if(split.length > j) {
+                        s = split[j];
+                    }
 
-        if(getColor(i1) == Color.Black) {
-            addEdges(i1, i2, 1);
-            for(int j = 0; j < nbVertices(); j++) {
-                int tmp = getEdgeCount(i1, j);
+                    if(s < 0) {
+                        throw new InvalidOperationException();
+                    }
 
-                int s = 0;
-                if(split.length > j) {
-                    s = split[j];
-                }
+                    int k1 = Math.max(0, getEdgeCount(i1, j) - s);
+                    int k2 = Math.min(tmp, s);
 
-                if(s < 0) {
-                    throw new InvalidOperationException();
+                    setEdgeCount(i1, j, k1);
+                    setEdgeCount(i2, j, k2);
                 }
-
-                int k1 = Math.max(0, getEdgeCount(i1, j) - s);
-                int k2 = Math.min(tmp, s);
-
-                setEdgeCount(i1, j, k1);
-                setEdgeCount(i2, j, k2);
             }
-        }
-        else {
-            addEdges(i2, i1, 1);
-            for(int j = 0; j < nbVertices(); j++) {
-                int tmp = getEdgeCount(j, i1);
+            else {
+                addEdges(i2, i1, 1);
+                for(int j = 0; j < nbVertices(); j++) {
+                    int tmp = getEdgeCount(j, i1);
 
-                int s = 0;
-                if(split.length > j) {
-                    s = split[j];
-                }
+                    int s = 0;
+                    if(split.length > j) {
+                        s = split[j];
+                    }
 
-                if(s < 0) {
-                    throw new InvalidOperationException();
-                }
+                    if(s < 0) {
+                        throw new InvalidOperationException();
+                    }
 
-                int k1 = Math.max(0, getEdgeCount(j, i1) - s);
-                int k2 = Math.min(tmp, s);
+                    int k1 = Math.max(0, getEdgeCount(j, i1) - s);
+                    int k2 = Math.min(tmp, s);
 
-                setEdgeCount(j, i1, k1);
-                setEdgeCount(j, i2, k2);
+                    setEdgeCount(j, i1, k1);
+                    setEdgeCount(j, i2, k2);
+                }
             }
+            return i2;
+        } finally {
+            log = l;
         }
-        return i2;
     }
 
     /**
      * Ajoute une copie du graphe dans gc puis fusionne les sommets i1 et i2 en suivant la règle R2
-     * @param gc liste de GraphBW
+     * @param gc destination des étapes
      * @param i1 indice correspondant à un sommet du graphe
      * @param i2 indice correspondant à un sommet du graphe
      * @throws InvalidOperationException si les sommets sont de couleurs différentes ou si ils ne sont pas reliés par une arrète
      */
-    public void merge(List<GraphBW> gc, int i1, int i2) throws InvalidOperationException {
-        if(i1 > i2) {
-            int tmp = i1;
-            i1 = i2;
-            i2 = tmp;
-        }
+    public void merge(StepSink gc, int i1, int i2) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_MERGE, i1, i2);
+        try {
+            if(i1 > i2) {
+                int tmp = i1;
+                i1 = i2;
+                i2 = tmp;
+            }
 
-        Color c1 = getColor(i1);
-        Color c2 = getColor(i2);
+            Color c1 = getColor(i1);
+            Color c2 = getColor(i2);
 
-        if(c1 != c2) {
-            throw new InvalidOperationException();
-        }
+            if(c1 != c2) {
+                throw new InvalidOperationException();
+            }
 
-        if (getEdgeCount(i1, i2) == 0 && getEdgeCount(i2, i1) == 0) {
-            throw new InvalidOperationException();
-        }
+            if (getEdgeCount(i1, i2) == 0 && getEdgeCount(i2, i1) == 0) {
+                throw new InvalidOperationException();
+            }
 
-        gc.add(this.clone());
+            record(gc);
 
-        if(getEdgeCount(i1, i2) == 1) {
-            setEdgeCount(i1, i2, 0);
-        }
-        else if(getEdgeCount(i2, i1) == 1) {
-            setEdgeCount(i2, i1, 0);
-        }
+            if(getEdgeCount(i1, i2) == 1) {
+                setEdgeCount(i1, i2, 0);
+            }
+            else if(getEdgeCount(i2, i1) == 1) {
+                setEdgeCount(i2, i1, 0);
+            }
 
-        if(c1 == Color.Black) {
-            for(int i = 0; i < nbVertices(); i++) {
-                int n = getEdgeCount(i2, i);
-                setEdgeCount(i2, i, 0);
-                addEdges(i1, i, n);
+            if(c1 == Color.Black) {
+                for(int i = 0; i < nbVertices(); i++) {
+                    int n = getEdgeCount(i2, i);
+                    setEdgeCount(i2, i, 0);
+                    addEdges(i1, i, n);
 
-                n = getEdgeCount(i, i2);
-                setEdgeCount(i, i2, 0);
-                addEdges(i, i1, n);
+                    n = getEdgeCount(i, i2);
+                    setEdgeCount(i, i2, 0);
+                    addEdges(i, i1, n);
+                }
             }
-        }
-        else {
-            for(int i = 0; i < nbVertices(); i++) {
-                int n = getEdgeCount(i, i2);
-                setEdgeCount(i, i2, 0);
-                addEdges(i, i1, n);
-
-                n = getEdgeCount(i2, i);
-                setEdgeCount(i2, i, 0);
-                addEdges(i1, i, n);
+            else {
+                for(int i = 0; i < nbVertices(); i++) {
+                    int n = getEdgeCount(i, i2);
+                    setEdgeCount(i, i2, 0);
+                    addEdges(i, i1, n);
+
+                    n = getEdgeCount(i2, i);
+                    setEdgeCount(i2, i, 0);
+                    addEdges(i1, i, n);
+                }
             }
-        }
 
-        removeNode(gc, i2);
+            removeNode(gc, i2);
+        } finally {
+            log = l;
+        }
     }
 
     /**
      * Ajoute une copie du graphe à gc puis ajoute un sommet entre i1 et i2 du couleur c
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes
      * @param i1 indice d'un sommet du graphe
      * @param i2 indice d'un sommet du graphe
      * @param c une couleur
      * @return l'indice du sommet ajouté
      * @throws InvalidOperationException si il n'y a pas d'arrête entre i1 et i2
      */
-    public int addNodeOnEdge(List<GraphBW> gc, int i1, int i2, Color c) throws InvalidOperationException {
-        int nb = getEdgeCount(i1, i2);
-        if(nb < 1) {
-            throw new InvalidOperationException();
-        }
+    public int addNodeOnEdge(StepSink gc, int i1, int i2, Color c) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_ADD_NODE_ON_EDGE, i1, i2, pack(c));
+        try {
+            int nb = getEdgeCount(i1, i2);
+            if(nb < 1) {
+                throw new InvalidOperationException();
+            }
 
-        gc.add(this.clone());
+            record(gc);
 
-        int i3 = addNode(c);
+            int i3 = addNode(c);
 
-        setEdgeCount(i1, i2, nb - 1);
+            setEdgeCount(i1, i2, nb - 1);
 
-        addEdges(i1, i3, 1);
-        addEdges(i3, i2, 1);
+            addEdges(i1, i3, 1);
+            addEdges(i3, i2, 1);
 
-        return i3;
+            return i3;
+        } finally {
+            log = l;
+        }
     }
 
     /**
      * Ajoute une copie du graphe à gc puis supprime le sommet i
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes
      * @param i indice du sommet à supprimer
      * @throws InvalidOperationException si le sommet ne peut pas etre supprimé :
      * un sommet peut être supprimer si il posséde exactement une arrête entrante et une arrête sortante
      */
-    public void removeNodeOnEdge(List<GraphBW> gc, int i) throws InvalidOperationException {
-        int[] entries = getEntries(i);
-        int[] exits = getExits(i);
+    public void removeNodeOnEdge(StepSink gc, int i) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_REMOVE_NODE_ON_EDGE, i);
+        try {
+            if(sumEntries(i) != 1 || sumExits(i) != 1) {
+                throw new InvalidOperationException();
+            }
 
-        if(Calcul.sum(entries) != 1 || Calcul.sum(exits) != 1) {
-            throw new InvalidOperationException();
-        }
+            LineView entries = entries(i);
+            LineView exits = exits(i);
 
-        gc.add(this.clone());
+            record(gc);
 
-        int i1 = -1;
-        int i2 = -1;
+            int i1 = -1;
+            int i2 = -1;
 
-        for(int j = 0; j < nbVertices(); j++) {
-            if(entries[j] != 0) {
-                i1 = j;
-            }
-            if(exits[j] != 0) {
-                i2 = j;
+            for(int j = 0; j < nbVertices(); j++) {
+                if(entries.get(j) != 0) {
+                    i1 = j;
+                }
+                if(exits.get(j) != 0) {
+                    i2 = j;
+                }
             }
-        }
 
-        removeEdges(i1, i, 1);
-        removeEdges(i, i2, 1);
+            removeEdges(i1, i, 1);
+            removeEdges(i, i2, 1);
 
-        addEdges(i1, i2, 1);
-        removeNode(gc, i);
+            addEdges(i1, i2, 1);
+            removeNode(gc, i);
+        } finally {
+            log = l;
+        }
     }
 
     /**
      * Ajoute une copie du Graph à gc et applique la règle R3 généralisée sur les sommets i1 et i2
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes
      * @param i1 indice correspondant à un sommet du graphe
      * @param i2 indice correspondant à un sommet du graphe
      * @return un tableau à 2 dimension res tel que res [0][i] est l'indice du i-ème sommet noir créé
@@ -457,70 +769,72 @@ public class GraphBW implements IGraph {
      * il faut que i1 soit un sommet blanc et i2 un sommet noir et que i1 et i2 soient reliés par une
      * et une seule arrête.
      */
-    public int[][] r3(List<GraphBW> gc, final int i1, final int i2) throws InvalidOperationException {
-        int[] i1exit = getExits(i1);
-        int[] i2entries = getEntries(i2);
+    public int[][] r3(StepSink gc, final int i1, final int i2) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_R3, i1, i2);
+        try {
+            if(getColor(i1) != Color.White || getColor(i2) != Color.Black || getEdgeCount(i1, i2) != 1) {
+                throw new InvalidOperationException();
+            }
 
-        if(getColor(i1) != Color.White || getColor(i2) != Color.Black || getEdgeCount(i1, i2) != 1) {
-            throw new InvalidOperationException();
-        }
+            record(gc);
 
-        gc.add(this.clone());
+            int first = nbVertices();
+            int entry = sumEntries(i1);
+            int exit = sumExits(i2);
 
-        int first = nbVertices();
-        int entry = 0;
-        int exit = 0;
+            int[][] res = new int[2][];
 
-        int[][] res = new int[2][];
+            addNodes(Color.Black, entry + exit);
+            paint(first + entry, first + entry + exit, WHITE);
 
-        for(int j = 0; j < nbVertices(); j++) {
-            int n = getEdgeCount(j, i1);
-            setEdgeCount(j, i1, 0);
-            while (n > 0) {
-                int t = addNode(Color.Black);
-                addEdges(j, t, 1);
-                entry++;
-                n--;
+            int t = first;
+            for(int j = 0; j < first; j++) {
+                int n = getEdgeCount(j, i1);
+                setEdgeCount(j, i1, 0);
+                while (n > 0) {
+                    addEdges(j, t++, 1);
+                    n--;
+                }
             }
-        }
 
-        for(int j = 0; j < nbVertices(); j++) {
-            int n = getEdgeCount(i2, j);
-            setEdgeCount(i2, j, 0);
-            while (n > 0) {
-                int t = addNode(Color.White);
-                addEdges(t, j, 1);
-                exit++;
-                n--;
+            for(int j = 0; j < first + entry; j++) {
+                int n = getEdgeCount(i2, j);
+                setEdgeCount(i2, j, 0);
+                while (n > 0) {
+                    addEdges(t++, j, 1);
+                    n--;
+                }
             }
-        }
 
-        res[0] = new int[entry];
-        res[1] = new int[exit];
+            res[0] = new int[entry];
+            res[1] = new int[exit];
 
-        for(int i = 0; i < entry; i++) {
-            for(int j = 0; j < exit; j++) {
-                addEdges(i + first, j + first + entry, 1);
+            for(int i = 0; i < entry; i++) {
+                for(int j = 0; j < exit; j++) {
+                    addEdges(i + first, j + first + entry, 1);
+                }
             }
-        }
 
-        if(i1 > i2) {
-            removeNode(gc, i1);
-            removeNode(gc, i2);
-        }
-        else {
-            removeNode(gc, i2);
-            removeNode(gc, i1);
-        }
+            if(i1 > i2) {
+                removeNode(gc, i1);
+                removeNode(gc, i2);
+            }
+            else {
+                removeNode(gc, i2);
+                removeNode(gc, i1);
+            }
 
-        for (int i = 0; i < entry; i++) {
-            res[0][i] = i + first - 2;
-        }
-        for(int i = 0; i < exit; i++) {
-            res[1][i] = i + first + entry - 2;
-        }
+            for (int i = 0; i < entry; i++) {
+                res[0][i] = i + first - 2;
+            }
+            for(int i = 0; i < exit; i++) {
+                res[1][i] = i + first + entry - 2;
+            }
 
-        return res;
+            return res;
+        } finally {
+            log = l;
+        }
     }
 
     /**
@@ -540,7 +854,7 @@ public class GraphBW implements IGraph {
 
     /**
      * Ajoute une copie du graphe dans gc puis applique la règle R3 inverse sur les sommets dans entry et exit.
-     * @param gc Une liste de GraphBW
+     * @param gc destination des étapes
      * @param entry indices des sommets noirs
      * @param exit indices des sommets blancs
      * @throws InvalidOperationException si une de ces conditions n'est pas respectée :
@@ -549,102 +863,112 @@ public class GraphBW implements IGraph {
      * 3) il y a exactement une arrête de chaque sommet noir vers chaque sommet blanc
      * 4) il n'y a aucune arrête qui part d'un sommet blanc vers un sommet noir
      */
-    public void r3(List<GraphBW> gc, int[] entry, int[] exit) throws InvalidOperationException {
-        for(int ei = 0; ei < nbVertices(); ei++) {
-            for(int xi = 0; xi < nbVertices(); xi++) {
-                int n = getEdgeCount(ei, xi);
-
-                boolean cei = contains(ei, entry);
-                boolean cxi = contains(xi, exit);
+    public void r3(StepSink gc, int[] entry, int[] exit) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_R3_SETS, entry, exit);
+        try {
+            for(int ei = 0; ei < nbVertices(); ei++) {
+                for(int xi = 0; xi < nbVertices(); xi++) {
+                    int n = getEdgeCount(ei, xi);
+
+                    boolean cei = contains(ei, entry);
+                    boolean cxi = contains(xi, exit);
+
+                    if( (cxi && cei) && n != 1) {
+                        throw new InvalidOperationException();
+                    }
+                    if( getEdgeCount(ei, xi) != 0 && ((cxi && !cei) || (!cxi && cei))) {
+                        throw new InvalidOperationException();
+                    }
+                }
+            }
 
-                if( (cxi && cei) && n != 1) {
+            for(int ei : entry) {
+                if(getColor(ei) != Color.Black) {
                     throw new InvalidOperationException();
                 }
-                if( getEdgeCount(ei, xi) != 0 && ((cxi && !cei) || (!cxi && cei))) {
+            }
+            for(int xi : exit) {
+                if(getColor(xi) != Color.White) {
                     throw new InvalidOperationException();
                 }
             }
-        }
-
-        for(int ei : entry) {
-            if(getColor(ei) != Color.Black) {
-                throw new InvalidOperationException();
-            }
-        }
-        for(int xi : exit) {
-            if(getColor(xi) != Color.White) {
-                throw new InvalidOperationException();
-            }
-        }
 
-        gc.add(this.clone());
+            record(gc);
 
-        int i1 = addNode(Color.White);
-        int i2 = addNode(Color.Black);
-        setEdgeCount(i1, i2, 1);
+            int i1 = addNode(Color.White);
+            int i2 = addNode(Color.Black);
+            setEdgeCount(i1, i2, 1);
 
-        for(int ei : entry) {
-            for(int j = 0; j < nbVertices(); j++) {
-                int n = getEdgeCount(j, ei);
-                setEdgeCount(j, ei, 0);
-                addEdges(j, i1, n);
+            for(int ei : entry) {
+                for(int j = 0; j < nbVertices(); j++) {
+                    int n = getEdgeCount(j, ei);
+                    setEdgeCount(j, ei, 0);
+                    addEdges(j, i1, n);
+                }
             }
-        }
 
-        for(int xi : exit) {
-            for(int j = 0; j < nbVertices(); j++) {
-                int n = getEdgeCount(xi, j);
-                setEdgeCount(xi, j, 0);
-                addEdges(i2, j, n);
+            for(int xi : exit) {
+                for(int j = 0; j < nbVertices(); j++) {
+                    int n = getEdgeCount(xi, j);
+                    setEdgeCount(xi, j, 0);
+                    addEdges(i2, j, n);
+                }
             }
-        }
 
-        Arrays.sort(entry);
-        Arrays.sort(exit);
+            Arrays.sort(entry);
+            Arrays.sort(exit);
 
-        int i = entry.length - 1;
-        int j = exit.length - 1;
+            int i = entry.length - 1;
+            int j = exit.length - 1;
 
-        while (i >= 0 || j >= 0) {
-            if(i >= 0) {
-                if(j >= 0) {
-                    if(entry[i] > exit[j]) {
-                        removeNode(gc, entry[i--]);
+            while (i >= 0 || j >= 0) {
+                if(i >= 0) {
+                    if(j >= 0) {
+                        if(entry[i] > exit[j]) {
+                            removeNode(gc, entry[i--]);
+                        }
+                        else {
+                            removeNode(gc, exit[j--]);
+                        }
                     }
                     else {
-                        removeNode(gc, exit[j--]);
+                        removeNode(gc, entry[i--]);
                     }
                 }
                 else {
-                    removeNode(gc, entry[i--]);
+                    removeNode(gc, exit[j--]);
                 }
             }
-            else {
-                removeNode(gc, exit[j--]);
-            }
+        } finally {
+            log = l;
         }
     }
 
     /**
      * Ajoute une copie du graphe dans gc puis ajoute les entrées du sommet-frère de i2 sur i1
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes
      * @param i1 l'indice d'un sommet blanc
      * @param i2 l'indice d'un sommet noir
      * @throws InvalidOperationException si i1 est noir ou i2 est blanc ou si il n'y a pas d'arrète de i2 vers i1
      */
-    public void addEntries(List<GraphBW> gc, int i1, int i2) throws InvalidOperationException {
-        if(getColor(i1) == Color.Black || getColor(i2) == Color.White || getEdgeCount(i2, i1) < 1) {
-            throw new InvalidOperationException();
-        }
+    public void addEntries(StepSink gc, int i1, int i2) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_ADD_ENTRIES, i1, i2);
+        try {
+            if(getColor(i1) == Color.Black || getColor(i2) == Color.White || getEdgeCount(i2, i1) < 1) {
+                throw new InvalidOperationException();
+            }
 
-        int[] i2exit = getExits(i2);
-        i2exit[i1] -= 1;
-        split(gc, i2, i2exit);
+            int[] i2exit = getExits(i2);
+            i2exit[i1] -= 1;
+            split(gc, i2, i2exit);
 
-        int i2b = getBrother(i2);
-        r3(gc, i2b, i2);
+            int i2b = getBrother(i2);
+            r3(gc, i2b, i2);
 
-        removeSameColorNodes(gc);
+            removeSameColorNodes(gc);
+        } finally {
+            log = l;
+        }
     }
 
     /**
@@ -653,7 +977,7 @@ public class GraphBW implements IGraph {
      * @return l'indice du sommet-frère de i
      */
     public int getBrother(int i) {
-        if(getColor(i) == Color.Black) {
+        if(colors[i] == BLACK) {
             for (int j = 0; j < nbVertices(); j++) {
                 if(getEdgeCount(j, i) == 1) {
                     return j;
@@ -672,24 +996,29 @@ public class GraphBW implements IGraph {
 
     /**
      * Ajoute une copie du graphe dans gc puis ajoute les sorties du sommet-frère de i2 sur i1
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes
      * @param i1 l'indice d'un sommet noir
      * @param i2 l'indice d'un sommet blanc
      * @throws InvalidOperationException si i1 est blanc ou i2 est noir ou si il n'y a pas d'arrète de i1 vers i2
      */
-    public void addExits(List<GraphBW> gc, int i1, int i2) throws InvalidOperationException {
-        if(getColor(i2) == Color.Black || getColor(i1) == Color.White || getEdgeCount(i1, i2) < 1) {
-            throw new InvalidOperationException();
-        }
+    public void addExits(StepSink gc, int i1, int i2) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_ADD_EXITS, i1, i2);
+        try {
+            if(getColor(i2) == Color.Black || getColor(i1) == Color.White || getEdgeCount(i1, i2) < 1) {
+                throw new InvalidOperationException();
+            }
 
-        int[] i2entries = getEntries(i2);
-        i2entries[i1] -= 1;
-        split(gc, i2, i2entries);
+            int[] i2entries = getEntries(i2);
+            i2entries[i1] -= 1;
+            split(gc, i2, i2entries);
 
-        int i2b = getBrother(i2);
-        r3(gc, i2, i2b);
+            int i2b = getBrother(i2);
+            r3(gc, i2, i2b);
 
-        removeSameColorNodes(gc);
+            removeSameColorNodes(gc);
+        } finally {
+            log = l;
+        }
     }
 
     /**
@@ -702,106 +1031,112 @@ public class GraphBW implements IGraph {
 
     /**
      * Ajoute une copie du graphe dans gc puis soustrait les sorties du sommet-frère de i2 sur i1
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes
      * @param i1 indice d'un sommet noir
      * @param i2 indice d'un sommet blanc
      * @throws InvalidOperationException si i1 est blanc ou i2 est noir ou encore si l'ensemble des sorties à
      * enlever ne sont pas toutes présentes sur i1.
      */
-    public void subExits(List<GraphBW> gc, int i1, int i2) throws InvalidOperationException {
-        if(getColor(i1) == Color.White) {
-            throw new InvalidOperationException();
-        }
+    public void subExits(StepSink gc, int i1, int i2) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_SUB_EXITS, i1, i2);
+        try {
+            if(getColor(i1) == Color.White) {
+                throw new InvalidOperationException();
+            }
 
-        int i2b = getBrother(i2);
+            int i2b = getBrother(i2);
 
-        for(int j = 0; j < nbVertices(); j++) {
-            if(getEdgeCount(i1, j) < getEdgeCount(i2b, j)) {
+            if(!exits(i1).dominates(exits(i2b))) {
                 throw new InvalidOperationException();
             }
-        }
-        int[] mask = zeros();
-        mask[i1] = 1;
-        mask[i2b] = 1;
+            int[] mask = zeros();
+            mask[i1] = 1;
+            mask[i2b] = 1;
 
-        int first = nbVertices();
+            int first = nbVertices();
 
-        for(int i = 0; i < first; i++) {
-            while (getEdgeCount(i2b, i) > 0) {
-                split(gc, i, mask);
+            for(int i = 0; i < first; i++) {
+                while (getEdgeCount(i2b, i) > 0) {
+                    split(gc, i, mask);
+                }
             }
-        }
 
-        mask = zeros();
-        int[] b = new int[2];
-        b[1] = i2b;
-        int[] w = new int[nbVertices() - first];
-        for (int i = 0; i < w.length; i++) {
-            w[i] = i + first;
-            mask[i + first] = 1;
-        }
-        b[0] = split(gc, i1, mask);
+            mask = zeros();
+            int[] b = new int[2];
+            b[1] = i2b;
+            int[] w = new int[nbVertices() - first];
+            for (int i = 0; i < w.length; i++) {
+                w[i] = i + first;
+                mask[i + first] = 1;
+            }
+            b[0] = split(gc, i1, mask);
 
-        r3(gc, b, w);
-        removeSameColorNodes(gc);
+            r3(gc, b, w);
+            removeSameColorNodes(gc);
+        } finally {
+            log = l;
+        }
     }
 
     /**
      * Ajoute une copie du graphe dans gc puis soustrait les entrées du sommet-frère de i2 sur i1
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes
      * @param i1 indice d'un sommet blanc
      * @param i2 indice d'un sommet noir
      * @throws InvalidOperationException si i1 est noir ou i2 est blanc ou encore si l'ensemble des entrées à
      * enlever ne sont pas toutes présentes sur i1.
      */
-    public void subEntries(List<GraphBW> gc, int i1, int i2) throws InvalidOperationException {
-        if(getColor(i1) == Color.Black) {
-            throw new InvalidOperationException();
-        }
+    public void subEntries(StepSink gc, int i1, int i2) throws InvalidOperationException {
+        MoveLog l = begin(MoveLog.BW_SUB_ENTRIES, i1, i2);
+        try {
+            if(getColor(i1) == Color.Black) {
+                throw new InvalidOperationException();
+            }
 
-        int i2b = getBrother(i2);
+            int i2b = getBrother(i2);
 
-        for(int j = 0; j < nbVertices(); j++) {
-            if(getEdgeCount(j, i1) < getEdgeCount(j, i2b)) {
+            if(!entries(i1).dominates(entries(i2b))) {
                 throw new InvalidOperationException();
             }
-        }
 
-        int[] mask = zeros();
-        mask[i1] = 1;
-        mask[i2b] = 1;
+            int[] mask = zeros();
+            mask[i1] = 1;
+            mask[i2b] = 1;
 
-        int first = nbVertices();
-        for (int i = 0; i < first; i++) {
-            while (getEdgeCount(i, i2b) > 0) {
-                split(gc, i, mask);
+            int first = nbVertices();
+            for (int i = 0; i < first; i++) {
+                while (getEdgeCount(i, i2b) > 0) {
+                    split(gc, i, mask);
+                }
             }
-        }
 
-        int[] b = new int[nbVertices() - first];
-        int[] w = new int[2];
-        mask = zeros();
-        w[0] = i2b;
-        for (int i = 0; i < b.length; i++) {
-            b[i] = i + first;
-            mask[i + first] = 1;
-        }
-        w[1] = split(gc, i1, mask);
+            int[] b = new int[nbVertices() - first];
+            int[] w = new int[2];
+            mask = zeros();
+            w[0] = i2b;
+            for (int i = 0; i < b.length; i++) {
+                b[i] = i + first;
+                mask[i + first] = 1;
+            }
+            w[1] = split(gc, i1, mask);
 
-        r3(gc, b, w);
-        removeSameColorNodes(gc);
+            r3(gc, b, w);
+            removeSameColorNodes(gc);
+        } finally {
+            log = l;
+        }
     }
 
     /**
      * Simplifie le graphe en fusionnant des sommets de même couleur
      * Ajoute chaque étape dans gc.
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes
      * @throws InvalidOperationException
      */
-    public void removeSameColorNodes(List<GraphBW> gc) throws InvalidOperationException {
+    public void removeSameColorNodes(StepSink gc) throws InvalidOperationException {
         for(int i = nbVertices() - 1; i >= 0; i--) {
             for (int j = 0; j < nbVertices(); j++) {
-                if(getColor(i) == getColor(j) && i != j && (getEdgeCount(i, j) != 0 || getEdgeCount(j, i) != 0)) {
+                if(colors[i] == colors[j] && i != j && (getEdgeCount(i, j) != 0 || getEdgeCount(j, i) != 0)) {
                     merge(gc, i, j);
                     break;
                 }
@@ -812,11 +1147,49 @@ public class GraphBW implements IGraph {
     /**
      * Applique l'algorithme de suppression des paire de sommet-frère sans boucle.
      * Ajoute chaque étape de l'algorithme dans gc.
-     * @param gc Liste de GraphBW
+     * @param gc destination des étapes, null pour ne pas enregistrer les étapes (voir <i>removeLooplessNodes()</i>)
+     * @throws InvalidOperationException
+     */
+    public void removeLooplessNodes(StepSink gc) throws InvalidOperationException {
+        if(gc == null) {
+            removeLooplessNodes();
+            return;
+        }
+        removeLooplessPairs(gc);
+    }
+
+    /**
+     * Applique l'algorithme de suppression des paire de sommet-frère sans boucle sans enregistrer
+     * les étapes. Le résultat est pris dans <i>ReductionCache.getShared()</i> si ce cache est
+     * activé et que le même graphe a déjà été traité.
      * @throws InvalidOperationException
      */
-    public void removeLooplessNodes(List<GraphBW> gc) throws InvalidOperationException {
+    public void removeLooplessNodes() throws InvalidOperationException {
+        ReductionCache cache = ReductionCache.getShared();
+        // un résultat restauré ne peut pas être décrit dans le journal
+        if(cache == null || log != null) {
+            removeLooplessPairs(null);
+            return;
+        }
+
+        ReductionCache.Key k = new ReductionCache.Key(ReductionCache.LOOPLESS_BW, data, colors);
+        ReductionCache.Result r = cache.get(k);
+        if(r != null) {
+            data = r.matrix(k);
+            colors = Arrays.copyOf(r.colors, r.n);
+            rehashColors();
+            // le journal ne peut pas décrire ce remplacement : la prochaine étape sera une copie complète
+            journal = null;
+        }
+        else {
+            removeLooplessPairs(null);
+            cache.store(k, data, colors);
+        }
+    }
+
+    private void removeLooplessPairs(StepSink gc) throws InvalidOperationException {
         for(int j = nbVertices() - 1; j >= 0; j--) {
+            Graph.checkInterrupted();
             int jb = j;
             int jw = getBrother(j);
 
@@ -831,8 +1204,8 @@ public class GraphBW implements IGraph {
             }
 
             if(getEdgeCount(jb, jw) == 0) {
-                int se = Calcul.sum(getEntries(jw));
-                int sx = Calcul.sum(getExits(jb));
+                int se = sumEntries(jw);
+                int sx = sumExits(jb);
 
                 if(se == 0 || sx == 0) {
                     removeNode(gc, Math.max(jb, jw));
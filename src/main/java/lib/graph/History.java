@@ -0,0 +1,214 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Historique des étapes d'un GraphBW, consultable comme une List&lt;GraphBW&gt;.
+ * Au lieu de garder une copie complète du graphe à chaque étape, seule une copie toutes les
+ * <i>keyframeInterval</i> étapes est conservée. Pour les autres étapes on garde la liste des
+ * modifications élémentaires (écriture d'une case, ajout ou suppression de sommets, couleur)
+ * faites sur le graphe depuis l'étape précédente. L'étape k est reconstruite à la demande
+ * à partir de la dernière copie complète qui la précède.
+ */
+public class History extends AbstractList<GraphBW> implements StepSink {
+    static final int SET = 0;
+    static final int ADD = 1;
+    static final int REMOVE = 2;
+    static final int COLOR = 3;
+
+    /**
+     * Modifications faites sur un graphe depuis sa dernière étape enregistrée dans history.
+     * Chaque modification occupe 4 entiers : le code de l'opération puis ses arguments.
+     * Le journal ne garde qu'une référence faible vers l'historique : un graphe ne retient pas un
+     * historique qui n'est plus utilisé.
+     */
+    static final class Journal {
+        final WeakReference<History> history;
+        int[] ops = new int[64];
+        int size;
+
+        Journal(History history) {
+            this.history = new WeakReference<>(history);
+        }
+
+        /**
+         * @return false si l'historique a été libéré, la modification n'est alors pas enregistrée
+         */
+        boolean log(int op, int a, int b, int c) {
+            if(history.get() == null) {
+                return false;
+            }
+            if(size + 4 > ops.length) {
+                ops = Arrays.copyOf(ops, 2 * ops.length);
+            }
+            ops[size++] = op;
+            ops[size++] = a;
+            ops[size++] = b;
+            ops[size++] = c;
+            return true;
+        }
+
+        int[] take() {
+            int[] res = Arrays.copyOf(ops, size);
+            size = 0;
+            return res;
+        }
+    }
+
+    private final int keyframeInterval;
+
+    /**
+     * chaque élément est soit un GraphBW (copie complète), soit un int[] (modifications depuis l'étape précédente)
+     */
+    private final ArrayList<Object> steps = new ArrayList<>();
+
+    /**
+     * graphe dont le journal alimente la prochaine étape, null si la prochaine étape doit être une copie complète.
+     * Seul ce graphe a un journal attaché à l'historique.
+     */
+    private GraphBW last;
+
+    private GraphBW cursor;
+    private int cursorIndex = -1;
+
+    public History() {
+        this(64);
+    }
+
+    /**
+     *
+     * @param keyframeInterval nombre d'étapes entre deux copies complètes du graphe
+     */
+    public History(int keyframeInterval) {
+        if(keyframeInterval < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Ajoute l'état actuel de g comme nouvelle étape
+     * @param g le graphe à enregistrer
+     */
+    @Override
+    public void record(GraphBW g) {
+        if(g == last && g.journal != null && g.journal.history.get() == this && steps.size() % keyframeInterval != 0) {
+            steps.add(g.journal.take());
+        }
+        else {
+            if(g != last) {
+                detach();
+            }
+            steps.add(g.clone());
+            g.journal = new Journal(this);
+            last = g;
+        }
+    }
+
+    /**
+     * Arrête l'enregistrement des modifications de last, la prochaine étape sera une copie complète
+     */
+    private void detach() {
+        if(last != null && last.journal != null && last.journal.history.get() == this) {
+            last.journal = null;
+        }
+        last = null;
+    }
+
+    /**
+     * Ajoute g tel quel comme copie complète, comme le ferait une List
+     * @param g un GraphBW
+     * @return true
+     */
+    @Override
+    public boolean add(GraphBW g) {
+        steps.add(g);
+        detach();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        steps.clear();
+        detach();
+        cursor = null;
+        cursorIndex = -1;
+    }
+
+    @Override
+    public int size() {
+        return steps.size();
+    }
+
+    /**
+     *
+     * @param k indice de l'étape
+     * @return une copie du graphe à l'étape k
+     */
+    @Override
+    public GraphBW get(int k) {
+        if(k < 0 || k >= steps.size()) {
+            throw new IndexOutOfBoundsException(String.valueOf(k));
+        }
+
+        int from = k;
+        while (!(steps.get(from) instanceof GraphBW)) {
+            from--;
+        }
+
+        if(cursor == null || cursorIndex > k || cursorIndex < from) {
+            cursor = ((GraphBW) steps.get(from)).clone();
+            cursorIndex = from;
+        }
+
+        while (cursorIndex < k) {
+            cursorIndex++;
+            apply(cursor, (int[]) steps.get(cursorIndex));
+        }
+
+        return cursor.clone();
+    }
+
+    /**
+     * Rejoue sur g les modifications de delta, sans vérifier les règles des graphes noir/blanc
+     * @param g un GraphBW
+     * @param delta modifications enregistrées par un Journal
+     */
+    private static void apply(GraphBW g, int[] delta) {
+        for(int p = 0; p < delta.length; p += 4) {
+            switch (delta[p]) {
+                case SET:
+                    g.data.set(delta[p + 1], delta[p + 2], delta[p + 3]);
+                    break;
+                case ADD:
+                    g.growNodes((byte) delta[p + 2], delta[p + 1]);
+                    break;
+                case REMOVE:
+                    g.deleteNode(delta[p + 1]);
+                    break;
+                case COLOR:
+                    g.paint(delta[p + 1], delta[p + 2], (byte) delta[p + 3]);
+                    break;
+            }
+        }
+    }
+}
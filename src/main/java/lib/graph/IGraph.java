@@ -19,4 +19,44 @@ package lib.graph;
 public interface IGraph {
     int nbVertices();
     int getEdgeCount(int i1, int i2);
+
+    /**
+     * Copie les sorties du sommet i dans row. Graph et GraphBW copient directement la ligne de leur
+     * matrice ; l'implémentation par défaut appelle getEdgeCount pour chaque case.
+     * @param i l'indice correspondant à un sommet du graphe
+     * @param row tableau d'au moins nbVertices() valeurs, row[j] reçoit le nombre d'arrêtes de i vers j
+     */
+    default void copyExits(int i, int[] row) {
+        for(int j = 0; j < nbVertices(); j++) {
+            row[j] = getEdgeCount(i, j);
+        }
+    }
+
+    /**
+     * Permet de sauter les lignes vides sans les lire. Graph et GraphBW répondent en temps constant
+     * à partir des sommes des lignes de leur matrice ; l'implémentation par défaut renvoie toujours True.
+     * @param i l'indice correspondant à un sommet du graphe
+     * @return False si i n'a aucune arrête sortante, True si il peut en avoir
+     */
+    default boolean hasExits(int i) {
+        return true;
+    }
+
+    /**
+     * Empreinte 64 bits du contenu du graphe : deux graphes qui ont la même matrice d'adjacence
+     * ont la même empreinte, deux empreintes différentes prouvent donc que les graphes diffèrent.
+     * Graph et GraphBW la tiennent à jour à chaque modification et la renvoient en temps constant,
+     * sauf au premier appel après une suppression de sommet qui la recalcule ; l'implémentation par
+     * défaut la recalcule toujours en O(n^2).
+     * @return l'empreinte du graphe
+     */
+    default long getHash() {
+        long res = 0;
+        for(int i = 0; i < nbVertices(); i++) {
+            for(int j = 0; j < nbVertices(); j++) {
+                res += getEdgeCount(i, j) * AdjacencyMatrix.cellKey(i, j);
+            }
+        }
+        return res;
+    }
 }
@@ -0,0 +1,160 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+/**
+ * Vue en lecture seule sur une ligne (sorties d'un sommet) ou une colonne (entrées d'un sommet)
+ * de la matrice d'un graphe, éventuellement sans la matrice identité.
+ * La vue lit directement la matrice, sans copie : elle reflète donc les modifications du graphe,
+ * mais n'est plus valable après la suppression d'un sommet d'indice inférieur ou égal au sien.
+ */
+public final class LineView {
+    private final AdjacencyMatrix m;
+    private final int index;
+    private final boolean column;
+    private final int identity;
+
+    /**
+     *
+     * @param m la matrice
+     * @param index l'indice du sommet
+     * @param column true pour la colonne (entrées), false pour la ligne (sorties)
+     * @param identity 1 pour retirer la matrice identité, 0 sinon
+     */
+    LineView(AdjacencyMatrix m, int index, boolean column, int identity) {
+        this.m = m;
+        this.index = index;
+        this.column = column;
+        this.identity = identity;
+    }
+
+    /**
+     *
+     * @return le nombre de valeurs de la vue (le nombre de sommets du graphe)
+     */
+    public int size() {
+        return m.size();
+    }
+
+    /**
+     *
+     * @param j l'indice correspondant à un sommet du graphe
+     * @return le nombre d'arrêtes entre le sommet de la vue et j
+     */
+    public int get(int j) {
+        int v = column ? m.get(j, index) : m.get(index, j);
+        return j == index ? v - identity : v;
+    }
+
+    /**
+     *
+     * @return la somme des valeurs de la vue
+     */
+    public int sum() {
+        return (column ? m.colSum(index) : m.rowSum(index)) - identity;
+    }
+
+    /**
+     *
+     * @return le nombre de valeurs non nulles
+     */
+    public int countNonZero() {
+        int res = 0;
+        for(int j = 0; j < m.size(); j++) {
+            if(get(j) != 0) {
+                res++;
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @return l'indice de la plus petite valeur non nulle (le premier en cas d'égalité), -1 si toutes sont nulles
+     */
+    public int argMin() {
+        int res = -1;
+        int min = 0;
+        for(int j = 0; j < m.size(); j++) {
+            int v = get(j);
+            if(v != 0 && (res == -1 || v < min)) {
+                res = j;
+                min = v;
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param exclude indice à ignorer
+     * @return l'indice de la plus grande valeur non nulle autre que exclude (le premier en cas d'égalité),
+     * -1 si il n'y en a pas
+     */
+    public int argMax(int exclude) {
+        int res = -1;
+        int max = 0;
+        for(int j = 0; j < m.size(); j++) {
+            int v = get(j);
+            if(v != 0 && j != exclude && (res == -1 || v > max)) {
+                res = j;
+                max = v;
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param o une autre vue de même taille
+     * @return True si chaque valeur de la vue est supérieure ou égale à la valeur correspondante de o
+     */
+    public boolean dominates(LineView o) {
+        for(int j = 0; j < m.size(); j++) {
+            if(get(j) < o.get(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param o une autre vue de même taille
+     * @return True si les deux vues ont les mêmes valeurs
+     */
+    public boolean sameAs(LineView o) {
+        for(int j = 0; j < m.size(); j++) {
+            if(get(j) != o.get(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @return une copie des valeurs de la vue
+     */
+    public int[] toArray() {
+        int[] res = new int[m.size()];
+        for(int j = 0; j < res.length; j++) {
+            res[j] = get(j);
+        }
+        return res;
+    }
+}
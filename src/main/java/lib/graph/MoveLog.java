@@ -0,0 +1,444 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+import lib.exceptions.InvalidOperationException;
+
+import java.util.Arrays;
+
+/**
+ * Journal des opérations appliquées sur un Graph ou un GraphBW : c'est un certificat de la façon
+ * dont le graphe final a été obtenu.
+ *
+ * Une fois attaché à un graphe avec <i>setMoveLog</i>, chaque opération publique (division,
+ * fusion, r3, ajout et soustraction d'entrées ou de sorties, mais aussi les modifications directes
+ * de la matrice) y est ajoutée avec ses arguments. Les opérations appelées à l'intérieur d'une
+ * autre ne sont pas enregistrées : seul l'appel extérieur l'est.
+ *
+ * Chaque opération occupe dans un tableau d'entiers son code, le nombre de ses arguments puis
+ * ses arguments. <i>replay</i> rejoue le journal sur le graphe de départ sans aucune copie
+ * intermédiaire, en un temps proportionnel à la longueur du journal.
+ */
+public class MoveLog {
+    // opérations de Graph
+    static final int SET_EDGE = 0;
+    static final int ADD_NODE = 1;
+    static final int REMOVE_NODE = 2;
+    static final int STRETCH = 3;
+    static final int CONTRACT = 4;
+    static final int SPLIT_ENTRIES = 5;
+    static final int SPLIT_EXITS = 6;
+    static final int MERGE_ENTRIES = 7;
+    static final int MERGE_EXITS = 8;
+    static final int ADD_EXITS = 9;
+    static final int ADD_ENTRIES = 10;
+    static final int SUB_EXITS = 11;
+    static final int SUB_ENTRIES = 12;
+
+    // opérations de GraphBW
+    static final int BW_SET_EDGE = 20;
+    static final int BW_SET_COLOR = 21;
+    static final int BW_ADD_NODES = 22;
+    static final int BW_REMOVE_NODE = 23;
+    static final int BW_SPLIT = 24;
+    static final int BW_MERGE = 25;
+    static final int BW_ADD_NODE_ON_EDGE = 26;
+    static final int BW_REMOVE_NODE_ON_EDGE = 27;
+    static final int BW_R3 = 28;
+    static final int BW_R3_SETS = 29;
+    static final int BW_ADD_ENTRIES = 30;
+    static final int BW_ADD_EXITS = 31;
+    static final int BW_SUB_EXITS = 32;
+    static final int BW_SUB_ENTRIES = 33;
+
+    private static final String[] NAMES = new String[34];
+
+    static {
+        String[] graph = {"setEdgeCount", "addNode", "removeNode", "flowEquivalence", "flowEquivalence",
+                "splitEntries", "splitExits", "mergeEntries", "mergeExits", "addExits", "addEntries",
+                "subExits", "subEntries"};
+        String[] bw = {"setEdgeCount", "setColor", "addNodes", "removeNode", "split", "merge",
+                "addNodeOnEdge", "removeNodeOnEdge", "r3", "r3", "addEntries", "addExits", "subExits",
+                "subEntries"};
+        System.arraycopy(graph, 0, NAMES, SET_EDGE, graph.length);
+        System.arraycopy(bw, 0, NAMES, BW_SET_EDGE, bw.length);
+    }
+
+    private int[] ops;
+    private int size;
+    private int count;
+
+    public MoveLog() {
+        ops = new int[64];
+    }
+
+    private MoveLog(int[] ops) {
+        this.ops = ops;
+        this.size = ops.length;
+        for(int p = 0; p < size; p += 2 + ops[p + 1]) {
+            count++;
+        }
+    }
+
+    /**
+     *
+     * @param ops un tableau renvoyé par <i>toArray()</i>
+     * @return le journal correspondant
+     */
+    public static MoveLog fromArray(int[] ops) {
+        for(int p = 0; p < ops.length; p += 2 + ops[p + 1]) {
+            if(p + 1 >= ops.length || ops[p + 1] < 0 || p + 2 + ops[p + 1] > ops.length) {
+                throw new IllegalArgumentException("truncated log at " + p);
+            }
+        }
+        return new MoveLog(ops.clone());
+    }
+
+    /**
+     *
+     * @return le contenu du journal
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(ops, size);
+    }
+
+    /**
+     *
+     * @return le nombre d'opérations enregistrées
+     */
+    public int size() {
+        return count;
+    }
+
+    private void ensure(int n) {
+        if(size + n > ops.length) {
+            ops = Arrays.copyOf(ops, Math.max(size + n, 2 * ops.length));
+        }
+    }
+
+    void add(int op) {
+        ensure(2);
+        ops[size++] = op;
+        ops[size++] = 0;
+        count++;
+    }
+
+    void add(int op, int a) {
+        ensure(3);
+        ops[size++] = op;
+        ops[size++] = 1;
+        ops[size++] = a;
+        count++;
+    }
+
+    void add(int op, int a, int b) {
+        ensure(4);
+        ops[size++] = op;
+        ops[size++] = 2;
+        ops[size++] = a;
+        ops[size++] = b;
+        count++;
+    }
+
+    void add(int op, int a, int b, int c) {
+        ensure(5);
+        ops[size++] = op;
+        ops[size++] = 3;
+        ops[size++] = a;
+        ops[size++] = b;
+        ops[size++] = c;
+        count++;
+    }
+
+    /**
+     * Enregistre une opération dont les arguments sont a puis le tableau l
+     */
+    void add(int op, int a, int[] l) {
+        ensure(3 + l.length);
+        ops[size++] = op;
+        ops[size++] = 1 + l.length;
+        ops[size++] = a;
+        System.arraycopy(l, 0, ops, size, l.length);
+        size += l.length;
+        count++;
+    }
+
+    /**
+     * Enregistre une opération dont les arguments sont deux tableaux, chacun précédé de sa taille
+     */
+    void add(int op, int[] l1, int[] l2) {
+        ensure(4 + l1.length + l2.length);
+        ops[size++] = op;
+        ops[size++] = 2 + l1.length + l2.length;
+        ops[size++] = l1.length;
+        System.arraycopy(l1, 0, ops, size, l1.length);
+        size += l1.length;
+        ops[size++] = l2.length;
+        System.arraycopy(l2, 0, ops, size, l2.length);
+        size += l2.length;
+        count++;
+    }
+
+    /**
+     * Résultat d'un rejeu
+     */
+    public static class Replay<T extends IGraph> {
+        private final T graph;
+        private final int failures;
+
+        Replay(T graph, int failures) {
+            this.graph = graph;
+            this.failures = failures;
+        }
+
+        /**
+         *
+         * @return le graphe obtenu
+         */
+        public T getGraph() {
+            return graph;
+        }
+
+        /**
+         * Une opération qui a levé une InvalidOperationException lors du calcul la lève aussi lors du
+         * rejeu, après les mêmes modifications : le rejeu continue comme l'avait fait le calcul.
+         * @return le nombre d'opérations qui ont échoué
+         */
+        public int getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * Rejoue le journal sur une copie de g
+     * @param g le graphe de départ, il n'est pas modifié
+     * @return le graphe obtenu
+     * @throws IllegalArgumentException si le journal contient des opérations de GraphBW
+     */
+    public Replay<Graph> replay(Graph g) {
+        Graph res = g.clone();
+        int failures = 0;
+
+        for(int p = 0; p < size; p += 2 + ops[p + 1]) {
+            int a = p + 2;
+            try {
+                switch (ops[p]) {
+                    case SET_EDGE:
+                        res.setEdgeCount(ops[a], ops[a + 1], ops[a + 2]);
+                        break;
+                    case ADD_NODE:
+                        res.addNode();
+                        break;
+                    case REMOVE_NODE:
+                        res.removeNode(ops[a]);
+                        break;
+                    case STRETCH:
+                        res.flowEquivalence(ops[a]);
+                        break;
+                    case CONTRACT:
+                        res.flowEquivalence(ops[a], ops[a + 1]);
+                        break;
+                    case SPLIT_ENTRIES:
+                        res.splitEntries(ops[a], Arrays.copyOfRange(ops, a + 1, a + ops[p + 1]));
+                        break;
+                    case SPLIT_EXITS:
+                        res.splitExits(ops[a], Arrays.copyOfRange(ops, a + 1, a + ops[p + 1]));
+                        break;
+                    case MERGE_ENTRIES:
+                        res.mergeEntries(ops[a], ops[a + 1]);
+                        break;
+                    case MERGE_EXITS:
+                        res.mergeExits(ops[a], ops[a + 1]);
+                        break;
+                    case ADD_EXITS:
+                        if(ops[a + 2] == 1) {
+                            res.addExits(ops[a], ops[a + 1]);
+                        }
+                        else {
+                            res.addExits(ops[a], ops[a + 1], ops[a + 2]);
+                        }
+                        break;
+                    case ADD_ENTRIES:
+                        if(ops[a + 2] == 1) {
+                            res.addEntries(ops[a], ops[a + 1]);
+                        }
+                        else {
+                            res.addEntries(ops[a], ops[a + 1], ops[a + 2]);
+                        }
+                        break;
+                    case SUB_EXITS:
+                        if(ops[a + 2] == 1) {
+                            res.subExits(ops[a], ops[a + 1]);
+                        }
+                        else {
+                            res.subExits(ops[a], ops[a + 1], ops[a + 2]);
+                        }
+                        break;
+                    case SUB_ENTRIES:
+                        if(ops[a + 2] == 1) {
+                            res.subEntries(ops[a], ops[a + 1]);
+                        }
+                        else {
+                            res.subEntries(ops[a], ops[a + 1], ops[a + 2]);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("not a Graph operation: " + ops[p]);
+                }
+            } catch (InvalidOperationException e) {
+                failures++;
+            }
+        }
+
+        return new Replay<>(res, failures);
+    }
+
+    /**
+     * Rejoue le journal sur une copie de g, sans enregistrer d'étapes
+     * @param g le graphe de départ, il n'est pas modifié
+     * @return le graphe obtenu
+     * @throws IllegalArgumentException si le journal contient des opérations de Graph
+     */
+    public Replay<GraphBW> replay(GraphBW g) {
+        GraphBW res = g.clone();
+        int failures = 0;
+
+        for(int p = 0; p < size; p += 2 + ops[p + 1]) {
+            int a = p + 2;
+            try {
+                switch (ops[p]) {
+                    case BW_SET_EDGE:
+                        res.setEdgeCount(ops[a], ops[a + 1], ops[a + 2]);
+                        break;
+                    case BW_SET_COLOR:
+                        res.setColor(ops[a], color(ops[a + 1]));
+                        break;
+                    case BW_ADD_NODES:
+                        res.addNodes(color(ops[a]), ops[a + 1]);
+                        break;
+                    case BW_REMOVE_NODE:
+                        res.removeNode(null, ops[a]);
+                        break;
+                    case BW_SPLIT:
+                        res.split(null, ops[a], Arrays.copyOfRange(ops, a + 1, a + ops[p + 1]));
+                        break;
+                    case BW_MERGE:
+                        res.merge(null, ops[a], ops[a + 1]);
+                        break;
+                    case BW_ADD_NODE_ON_EDGE:
+                        res.addNodeOnEdge(null, ops[a], ops[a + 1], color(ops[a + 2]));
+                        break;
+                    case BW_REMOVE_NODE_ON_EDGE:
+                        res.removeNodeOnEdge(null, ops[a]);
+                        break;
+                    case BW_R3:
+                        res.r3(null, ops[a], ops[a + 1]);
+                        break;
+                    case BW_R3_SETS:
+                        int l1 = ops[a];
+                        int[] entry = Arrays.copyOfRange(ops, a + 1, a + 1 + l1);
+                        int[] exit = Arrays.copyOfRange(ops, a + 2 + l1, a + 2 + l1 + ops[a + 1 + l1]);
+                        res.r3(null, entry, exit);
+                        break;
+                    case BW_ADD_ENTRIES:
+                        res.addEntries(null, ops[a], ops[a + 1]);
+                        break;
+                    case BW_ADD_EXITS:
+                        res.addExits(null, ops[a], ops[a + 1]);
+                        break;
+                    case BW_SUB_EXITS:
+                        res.subExits(null, ops[a], ops[a + 1]);
+                        break;
+                    case BW_SUB_ENTRIES:
+                        res.subEntries(null, ops[a], ops[a + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("not a GraphBW operation: " + ops[p]);
+                }
+            } catch (InvalidOperationException e) {
+                failures++;
+            }
+        }
+
+        return new Replay<>(res, failures);
+    }
+
+    /**
+     *
+     * @param in le graphe de départ
+     * @param out le graphe obtenu par le calcul
+     * @return True si le rejeu du journal sur in donne exactement out sans qu'aucune opération n'échoue
+     */
+    public boolean verify(Graph in, Graph out) {
+        Replay<Graph> r = replay(in);
+        return r.getFailures() == 0 && sameMatrix(r.getGraph(), out);
+    }
+
+    /**
+     *
+     * @param in le graphe de départ
+     * @param out le graphe obtenu par le calcul
+     * @return True si le rejeu du journal sur in donne exactement out (couleurs comprises) sans qu'aucune opération n'échoue
+     */
+    public boolean verify(GraphBW in, GraphBW out) {
+        Replay<GraphBW> r = replay(in);
+        if(r.getFailures() != 0 || !sameMatrix(r.getGraph(), out)) {
+            return false;
+        }
+        for(int i = 0; i < out.nbVertices(); i++) {
+            if(r.getGraph().getColor(i) != out.getColor(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameMatrix(IGraph a, IGraph b) {
+        if(a.nbVertices() != b.nbVertices() || a.getHash() != b.getHash()) {
+            return false;
+        }
+        for(int i = 0; i < a.nbVertices(); i++) {
+            for(int j = 0; j < a.nbVertices(); j++) {
+                if(a.getEdgeCount(i, j) != b.getEdgeCount(i, j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static Color color(int c) {
+        return c == GraphBW.BLACK ? Color.Black : Color.White;
+    }
+
+    /**
+     *
+     * @return une opération par ligne, par exemple "addExits 3 1 1"
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for(int p = 0; p < size; p += 2 + ops[p + 1]) {
+            str.append(ops[p] >= 0 && ops[p] < NAMES.length && NAMES[ops[p]] != null ? NAMES[ops[p]] : "op" + ops[p]);
+            for(int k = 0; k < ops[p + 1]; k++) {
+                str.append(' ').append(ops[p + 2 + k]);
+            }
+            str.append('\n');
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,335 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+import lib.exceptions.InvalidOperationException;
+import lib.math.FlowEquivalence;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Cache des résultats de réduction : associe à une matrice (et aux couleurs pour un GraphBW)
+ * le graphe obtenu après <i>reduceAll</i>, <i>putZeroOnLines</i>, <i>putZeroOnColumns</i> ou
+ * <i>removeLooplessNodes</i>, ainsi que les invariants de flow-equivalence (forme normale de Smith
+ * et déterminant de I - A) donnés par <i>FlowEquivalence.invariants</i>.
+ *
+ * La clé contient une empreinte de 64 bits de la matrice, mais deux clés ne sont égales que si
+ * leurs matrices sont identiques case par case : une collision d'empreinte ne peut pas
+ * renvoyer un mauvais résultat. Un résultat restauré est identique à celui du calcul, y compris
+ * les identifiants des sommets.
+ *
+ * La taille du cache est bornée par le nombre total de cases des matrices conservées ; les
+ * entrées les moins récemment utilisées sont supprimées en premier. Seuls les calculs qui
+ * réussissent sont conservés. Toutes les méthodes publiques peuvent être appelées depuis
+ * plusieurs threads.
+ *
+ * Le cache est désactivé par défaut : Graph, GraphBW et FlowEquivalence ne l'utilisent qu'une
+ * fois installé par <i>setShared</i> (option -cache de Batch).
+ */
+public class ReductionCache {
+    static final int REDUCE_ALL = 0;
+    static final int ZERO_LINES = 1;
+    static final int ZERO_COLUMNS = 2;
+    static final int LOOPLESS_BW = 3;
+    static final int INVARIANTS = 4;
+
+    private static volatile ReductionCache shared;
+
+    /**
+     * Calcul à mettre en cache
+     */
+    interface Reduction {
+        void run() throws InvalidOperationException;
+    }
+
+    /**
+     * Matrice d'entrée d'un calcul. Les identifiants des sommets ne font pas partie de la clé.
+     */
+    static final class Key {
+        final int op;
+        final int n;
+        final int[] cells;
+        final byte[] colors;
+        final long fingerprint;
+
+        /**
+         * identifiants des sommets de la matrice et prochain identifiant libre, pour traduire les résultats
+         */
+        final int[] ids;
+        final int nextId;
+
+        Key(int op, AdjacencyMatrix m, byte[] colors) {
+            this.op = op;
+            this.n = m.size();
+            this.cells = m.toArray();
+            this.colors = colors == null ? null : Arrays.copyOf(colors, n);
+            this.ids = Arrays.copyOf(m.ids, n);
+            this.nextId = m.nextId;
+
+            long h = 0x9E3779B97F4A7C15L * (op + 1) + n;
+            for(int c : cells) {
+                h = mix(h ^ c);
+            }
+            if(this.colors != null) {
+                for(byte c : this.colors) {
+                    h = mix(h ^ (c + 2));
+                }
+            }
+            this.fingerprint = h;
+        }
+
+        private static long mix(long h) {
+            h *= 0xBF58476D1CE4E5B9L;
+            return h ^ (h >>> 31);
+        }
+
+        long weight() {
+            return cells.length + n;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (fingerprint ^ (fingerprint >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return fingerprint == k.fingerprint && op == k.op && n == k.n
+                    && Arrays.equals(cells, k.cells) && Arrays.equals(colors, k.colors);
+        }
+    }
+
+    /**
+     * Résultat d'un calcul. Le sommet i du résultat est le sommet d'indice origin[i] de la matrice
+     * d'entrée si origin[i] &gt;= 0, sinon le (-origin[i] - 1)-ième identifiant créé pendant le calcul.
+     * Pour l'opération INVARIANTS seul le champ invariants est utilisé.
+     */
+    static final class Result {
+        final int n;
+        final int[] cells;
+        final byte[] colors;
+        final int[] origin;
+        final int created;
+        final FlowEquivalence.Invariants invariants;
+
+        Result(Key k, AdjacencyMatrix m, byte[] colors) {
+            this.n = m.size();
+            this.cells = m.toArray();
+            this.colors = colors == null ? null : Arrays.copyOf(colors, n);
+            this.origin = new int[n];
+            this.created = m.nextId - k.nextId;
+            this.invariants = null;
+
+            for(int i = 0; i < n; i++) {
+                int id = m.ids[i];
+                origin[i] = id < k.nextId ? Arrays.binarySearch(k.ids, id) : -(id - k.nextId) - 1;
+            }
+        }
+
+        Result(FlowEquivalence.Invariants invariants) {
+            this.n = 0;
+            this.cells = new int[0];
+            this.colors = null;
+            this.origin = new int[0];
+            this.created = 0;
+            this.invariants = invariants;
+        }
+
+        /**
+         *
+         * @param k la clé d'une matrice égale à la matrice d'entrée du calcul
+         * @return la matrice résultat, avec les identifiants que lui aurait donné le calcul
+         */
+        AdjacencyMatrix matrix(Key k) {
+            AdjacencyMatrix m = AdjacencyMatrix.of(n, cells);
+            for(int i = 0; i < n; i++) {
+                m.ids[i] = origin[i] >= 0 ? k.ids[origin[i]] : k.nextId - origin[i] - 1;
+            }
+            m.nextId = k.nextId + created;
+            return m;
+        }
+
+        long weight() {
+            // les invariants gardent la matrice I - A jusqu'au calcul de la forme normale de Smith
+            long m = invariants == null ? 0 : invariants.nbVertices();
+            return cells.length + 3L * n + m * m;
+        }
+    }
+
+    private final long capacity;
+    private final LinkedHashMap<Key, Result> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     *
+     * @param capacity nombre maximum de cases de matrices (entrées et résultats) conservées
+     */
+    public ReductionCache(long capacity) {
+        if(capacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     *
+     * @return le cache utilisé par Graph et GraphBW, null si il est désactivé (par défaut)
+     */
+    public static ReductionCache getShared() {
+        return shared;
+    }
+
+    /**
+     *
+     * @param cache le cache à utiliser dans Graph et GraphBW, null pour le désactiver
+     */
+    public static void setShared(ReductionCache cache) {
+        shared = cache;
+    }
+
+    /**
+     *
+     * @param g une instance de IGraph
+     * @param compute calcul des invariants de g quand ils ne sont pas en cache
+     * @return les invariants de flow-equivalence de g, calculés une seule fois par matrice pour
+     * un Graph ou un GraphBW
+     */
+    public FlowEquivalence.Invariants invariants(IGraph g, Function<IGraph, FlowEquivalence.Invariants> compute) {
+        AdjacencyMatrix data;
+        if(g instanceof Graph) {
+            data = ((Graph) g).data;
+        }
+        else if(g instanceof GraphBW) {
+            data = ((GraphBW) g).data;
+        }
+        else {
+            return compute.apply(g);
+        }
+
+        Key k = new Key(INVARIANTS, data, null);
+        Result r = get(k);
+        if(r == null) {
+            r = new Result(compute.apply(g));
+            put(k, r);
+        }
+        return r.invariants;
+    }
+
+    /**
+     *
+     * @param k la clé calculée avant la réduction
+     * @param m la matrice après la réduction
+     * @param colors les couleurs après la réduction, null pour un Graph
+     */
+    void store(Key k, AdjacencyMatrix m, byte[] colors) {
+        put(k, new Result(k, m, colors));
+    }
+
+    /**
+     *
+     * @param k la clé d'une matrice
+     * @return le résultat du calcul pour cette matrice, null si il n'est pas en cache
+     */
+    synchronized Result get(Key k) {
+        Result r = map.get(k);
+        if(r == null) {
+            misses++;
+        }
+        else {
+            hits++;
+        }
+        return r;
+    }
+
+    private synchronized void put(Key k, Result r) {
+        long w = k.weight() + r.weight();
+        if(w > capacity) {
+            return;
+        }
+
+        Result old = map.put(k, r);
+        weight += w;
+        if(old != null) {
+            weight -= k.weight() + old.weight();
+        }
+
+        Iterator<Map.Entry<Key, Result>> it = map.entrySet().iterator();
+        while (weight > capacity) {
+            Map.Entry<Key, Result> e = it.next();
+            weight -= e.getKey().weight() + e.getValue().weight();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Vide le cache, les statistiques sont conservées
+     */
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    /**
+     *
+     * @return le nombre d'entrées du cache
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     *
+     * @return le nombre de recherches qui ont trouvé un résultat
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     *
+     * @return le nombre de recherches qui n'ont pas trouvé de résultat
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     *
+     * @return le nombre d'entrées supprimées pour respecter la taille du cache
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ReductionCache[size=" + map.size() + ", weight=" + weight + "/" + capacity
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
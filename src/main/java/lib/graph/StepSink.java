@@ -0,0 +1,46 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph;
+
+import java.util.List;
+
+/**
+ * Destination des étapes enregistrées par les opérations de GraphBW : avant chaque modification,
+ * l'état actuel du graphe lui est transmis.
+ *
+ * Implémentations : <i>of(List)</i> qui ajoute une copie de chaque étape à une liste, History qui
+ * ne garde que les modifications entre deux étapes, et StreamingHistory qui écrit chaque étape
+ * dans un fichier DOT.
+ */
+public interface StepSink {
+
+    /**
+     * Enregistre l'état actuel de g. g continue d'être modifié ensuite : une implémentation qui
+     * conserve le graphe doit en garder une copie.
+     * @param g un GraphBW
+     */
+    void record(GraphBW g);
+
+    /**
+     *
+     * @param steps une liste de GraphBW
+     * @return une destination qui ajoute une copie de chaque étape à la fin de steps
+     */
+    static StepSink of(List<GraphBW> steps) {
+        return g -> steps.add(g.clone());
+    }
+}
@@ -0,0 +1,38 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph.io;
+
+/**
+ * Représentation des arrêtes multiples dans un fichier DOT
+ */
+public enum DotEdges {
+    /**
+     * une ligne "j -> i;" par arrête, m lignes pour un couple de multiplicité m
+     */
+    Expanded,
+
+    /**
+     * une ligne par couple de sommets reliés, avec la multiplicité en étiquette quand elle dépasse 1
+     */
+    Label,
+
+    /**
+     * une ligne par couple de sommets reliés, d'épaisseur 1 + log2(multiplicité) et avec la
+     * multiplicité en étiquette quand elle dépasse 1
+     */
+    PenWidth
+}
@@ -16,58 +16,95 @@ limitations under the License.
 
 package lib.graph.io;
 
+import lib.graph.BinaryMatrix;
 import lib.graph.Color;
 import lib.graph.Graph;
 import lib.graph.GraphBW;
 import lib.graph.IGraph;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
 
 public class GraphBWIO {
 
     /**
-     * charge un graphe noir/blanc à partir d'un fichier TXT qui contient une matrice d'adjacence.
+     * charge un graphe noir/blanc à partir d'un fichier TXT qui contient une matrice d'adjacence,
+     * ou d'un fichier binaire.
      * @param path chemin du fichier à charger
      * @return une instance de GraphBW qui représente le graphe noir/blanc chargé.
      * @throws IOException
      */
     public static GraphBW loadFromFile(String path) throws IOException {
+        if(BinaryMatrix.isBinary(path)) {
+            return BinaryMatrix.readBW(path);
+        }
         Graph res = GraphIO.loadFromFile(path);
         return GraphBW.fromGraphUnsafe(res);
     }
 
     /**
-     * Sauve le graphe noir/blanc g dans un fichier DOT.
+     * charge un graphe noir/blanc à partir d'un fichier binaire. Si le fichier contient les couleurs
+     * le graphe est utilisé tel quel, sinon il est construit comme pour un fichier TXT.
+     * @param path chemin du fichier à charger
+     * @return une instance de GraphBW qui représente le graphe noir/blanc chargé.
+     * @throws IOException si le fichier n'est pas au format binaire ou est corrompu
+     */
+    public static GraphBW loadFromBinaryFile(String path) throws IOException {
+        return BinaryMatrix.readBW(path);
+    }
+
+    /**
+     * Sauve le graphe noir/blanc g dans un fichier binaire, avec ses couleurs.
      * @param g une instance de GraphBW
      * @param path destination
      * @throws IOException
      */
-    public static void writeToDotFile(GraphBW g, String path) throws IOException {
-        BufferedWriter out = new BufferedWriter(new FileWriter(path));
+    public static void writeToBinaryFile(GraphBW g, String path) throws IOException {
+        BinaryMatrix.write(g, path);
+    }
 
-        out.write("digraph name {\n");
+    /**
+     * Convertit un fichier TXT en fichier binaire qui contient directement le graphe noir/blanc
+     * construit par <i>loadFromFile</i>.
+     * @param txt chemin du fichier TXT
+     * @param bin destination
+     * @throws IOException
+     */
+    public static void convertToBinary(String txt, String bin) throws IOException {
+        writeToBinaryFile(loadFromFile(txt), bin);
+    }
 
-        for(int i = 0; i < g.nbVertices(); i++) {
-            if(g.getColor(i) == Color.Black) {
-                out.write(i + " [style=filled fontcolor=\"white\" fillcolor=\"black\"];\n");
-            }
-        }
+    /**
+     * Sauve le graphe noir/blanc g dans un fichier DOT, avec une ligne par arrête.
+     * @param g une instance de GraphBW
+     * @param path destination
+     * @throws IOException
+     */
+    public static void writeToDotFile(GraphBW g, String path) throws IOException {
+        writeToDotFile(g, path, DotEdges.Expanded);
+    }
+
+    /**
+     * Sauve le graphe noir/blanc g dans un fichier DOT.
+     * @param g une instance de GraphBW
+     * @param path destination
+     * @param edges représentation des arrêtes multiples
+     * @throws IOException
+     */
+    public static void writeToDotFile(GraphBW g, String path, DotEdges edges) throws IOException {
+        try (MatrixWriter out = MatrixWriter.open(path, false)) {
+            out.write("digraph name {\n");
 
-        for(int j = 0; j < g.nbVertices(); j++) {
             for(int i = 0; i < g.nbVertices(); i++) {
-                for(int k = 0; k < g.getEdgeCount(j, i); k++) {
-                    out.write(j + " -> " + i + ";\n");
+                if(g.getColor(i) == Color.Black) {
+                    out.write(i);
+                    out.write(" [style=filled fontcolor=\"white\" fillcolor=\"black\"];\n");
                 }
             }
-        }
-
-        out.write("}");
 
-        out.flush();
-        out.close();
+            GraphIO.writeDotEdges(out, g, edges);
+            out.write('}');
+        }
     }
 
     /**
@@ -77,10 +114,7 @@ public class GraphBWIO {
      * @throws IOException
      */
     public static void writeToDotFiles(List<GraphBW> gc, String folder) throws IOException {
-        folder = folder.trim();
-        if(folder.charAt(folder.length() - 1) != '/') {
-            folder += '/';
-        }
+        folder = normalizeFolder(folder);
 
         for(int i = 0; i < gc.size(); i++) {
             GraphBW g = gc.get(i);
@@ -90,6 +124,19 @@ public class GraphBWIO {
         }
     }
 
+    /**
+     *
+     * @param folder chemin d'un répertoire
+     * @return folder sans espaces autour et terminé par '/'
+     */
+    static String normalizeFolder(String folder) {
+        folder = folder.trim();
+        if(folder.charAt(folder.length() - 1) != '/') {
+            folder += '/';
+        }
+        return folder;
+    }
+
     /**
      * Sauve le graphe g dans un fichier TXT.
      * @param g une instance de IGraph
@@ -100,6 +147,27 @@ public class GraphBWIO {
         GraphIO.writeToFile(g, path);
     }
 
+    /**
+     * Sauve le graphe g dans un fichier TXT, éventuellement compressé au format gzip.
+     * @param g une instance de IGraph
+     * @param path destination
+     * @param gzip True pour compresser le fichier
+     * @throws IOException
+     */
+    public static void writeToFile(IGraph g, String path, boolean gzip) throws IOException {
+        GraphIO.writeToFile(g, path, gzip);
+    }
+
+    /**
+     * Sauve le graphe g dans un fichier TXT au format liste d'arrêtes.
+     * @param g une instance de IGraph
+     * @param path destination
+     * @throws IOException
+     */
+    public static void writeToEdgeListFile(IGraph g, String path) throws IOException {
+        GraphIO.writeToEdgeListFile(g, path);
+    }
+
     /**
      * affiche la matrice d'adjacence de g sur la sortie standard
      * @param g une instance de IGraph
@@ -16,6 +16,8 @@ limitations under the License.
 
 package lib.graph.io;
 
+import lib.exceptions.MatrixFormatException;
+import lib.graph.BinaryMatrix;
 import lib.graph.Graph;
 import lib.graph.IGraph;
 
@@ -24,89 +26,219 @@ import java.io.*;
 public class GraphIO {
 
     /**
-     * Charge un graphe à partir d'un fichier TXT qui contient une matrice d'adjacence.
+     * Charge un graphe à partir d'un fichier TXT qui contient soit une matrice d'adjacence
+     * (une ligne par sommet, les valeurs séparées par des ';'), soit une liste d'arrêtes (le nombre
+     * de sommets puis une ligne "source destination multiplicité" par couple de sommets reliés).
+     * Le format est reconnu à la première ligne, les lignes qui commencent par '#' sont ignorées.
+     * Un fichier au format binaire (voir <i>writeToBinaryFile</i>) est reconnu à son en-tête et chargé
+     * par <i>loadFromBinaryFile</i>.
+     * Un fichier compressé au format gzip est décompressé à la lecture.
      * @param path chemin du fichier à charger
-     * @return une instance de Graph qui représente le graphe chargé.
+     * @return une instance de Graph qui représente le graphe chargé, null si le fichier ne contient aucune valeur.
+     * @throws MatrixFormatException si le fichier est mal formé ou si la matrice n'est pas carrée
      * @throws IOException
      */
     public static Graph loadFromFile(String path) throws IOException {
-        Graph res = null;
+        if(BinaryMatrix.isBinary(path)) {
+            return BinaryMatrix.read(path);
+        }
+        return MatrixParser.load(path);
+    }
 
-        BufferedReader in = new BufferedReader(new FileReader(path));
+    /**
+     * Charge un graphe à partir d'un fichier binaire. Le fichier est projeté en mémoire : l'ouverture
+     * est en O(n) et chaque ligne de la matrice n'est lue qu'au premier accès.
+     * @param path chemin du fichier à charger
+     * @return une instance de Graph qui représente le graphe chargé
+     * @throws IOException si le fichier n'est pas au format binaire ou est corrompu
+     */
+    public static Graph loadFromBinaryFile(String path) throws IOException {
+        return BinaryMatrix.read(path);
+    }
 
-        String line;
-        int i1 = 0;
-        while ((line = in.readLine()) != null) {
-            line = line.trim();
-            if(line.length() != 0 && line.charAt(0) != '#') {
+    /**
+     * Sauve le graphe g dans un fichier binaire, avec une matrice pleine ou au format CSR selon
+     * celle qui est la plus petite.
+     * @param g une instance de IGraph
+     * @param path destination
+     * @throws IOException
+     */
+    public static void writeToBinaryFile(IGraph g, String path) throws IOException {
+        BinaryMatrix.write(g, path);
+    }
 
-                String[] data = line.split(";");
+    /**
+     * Convertit un fichier TXT en fichier binaire.
+     * @param txt chemin du fichier TXT (matrice d'adjacence ou liste d'arrêtes)
+     * @param bin destination
+     * @throws IOException
+     */
+    public static void convertToBinary(String txt, String bin) throws IOException {
+        Graph g = MatrixParser.load(txt);
+        writeToBinaryFile(g == null ? new Graph(0) : g, bin);
+    }
 
-                if(res == null) {
-                    res = new Graph(data.length);
-                }
+    /**
+     * Sauve le graphe g dans un fichier TXT.
+     * @param g une instance de IGraph
+     * @param path destination
+     * @throws IOException
+     */
+    public static void writeToFile(IGraph g, String path) throws IOException {
+        writeToFile(g, path, false);
+    }
 
-                for(int i2 = 0; i2 < data.length; i2++) {
-                    res.addEdges(i1, i2, Integer.parseInt(data[i2].trim()));
+    /**
+     * Sauve le graphe g dans un fichier TXT, éventuellement compressé au format gzip. Chaque ligne
+     * de la matrice est copiée d'un bloc (voir <i>IGraph.copyExits</i>) puis écrite dans un tampon
+     * réutilisé. Un fichier compressé est relu par <i>loadFromFile</i>.
+     * @param g une instance de IGraph
+     * @param path destination
+     * @param gzip True pour compresser le fichier
+     * @throws IOException
+     */
+    public static void writeToFile(IGraph g, String path, boolean gzip) throws IOException {
+        int n = g.nbVertices();
+        int[] row = new int[n];
+
+        try (MatrixWriter out = MatrixWriter.open(path, gzip)) {
+            for(int j = 0; j < n; j++) {
+                g.copyExits(j, row);
+                for(int i = 0; i < n; i++) {
+                    out.write(row[i]);
+                    out.write(i == n - 1 ? '\n' : ';');
                 }
-
-                i1++;
             }
         }
-
-        in.close();
-
-        return res;
     }
 
     /**
-     * Sauve le graphe g dans un fichier TXT.
+     * Sauve le graphe g dans un fichier TXT au format liste d'arrêtes : le nombre de sommets sur la
+     * première ligne puis une ligne "source destination multiplicité" par couple de sommets reliés.
+     * Seules les cases non nulles sont écrites, le fichier est relu par <i>loadFromFile</i>.
      * @param g une instance de IGraph
      * @param path destination
      * @throws IOException
      */
-    public static void writeToFile(IGraph g, String path) throws IOException {
-        BufferedWriter out = new BufferedWriter(new FileWriter(path));
+    public static void writeToEdgeListFile(IGraph g, String path) throws IOException {
+        writeToEdgeListFile(g, path, false);
+    }
 
-        for(int j = 0; j < g.nbVertices(); j++) {
-            for(int i = 0; i < g.nbVertices(); i++) {
-                String suffix = ";";
+    /**
+     * Sauve le graphe g dans un fichier TXT au format liste d'arrêtes, éventuellement compressé au
+     * format gzip. Comme pour <i>writeToFile</i>, chaque ligne de la matrice est copiée d'un bloc puis
+     * ses cases non nulles sont écrites dans un tampon réutilisé.
+     * @param g une instance de IGraph
+     * @param path destination
+     * @param gzip True pour compresser le fichier
+     * @throws IOException
+     */
+    public static void writeToEdgeListFile(IGraph g, String path, boolean gzip) throws IOException {
+        int n = g.nbVertices();
+        int[] row = new int[n];
 
-                if(i == g.nbVertices() - 1) {
-                    suffix = "\n";
+        try (MatrixWriter out = MatrixWriter.open(path, gzip)) {
+            if(n == 0) {
+                return;
+            }
+            out.write(n);
+            out.write('\n');
+
+            boolean empty = true;
+            for(int j = 0; j < n; j++) {
+                g.copyExits(j, row);
+                for(int i = 0; i < n; i++) {
+                    if(row[i] != 0) {
+                        out.write(j);
+                        out.write(' ');
+                        out.write(i);
+                        out.write(' ');
+                        out.write(row[i]);
+                        out.write('\n');
+                        empty = false;
+                    }
                 }
+            }
 
-                out.write(g.getEdgeCount(j, i) + suffix);
+            // seul, le nombre de sommets serait relu comme une matrice 1x1
+            if(empty) {
+                out.write("0 0 0\n");
             }
         }
+    }
 
-        out.flush();
-        out.close();
+    /**
+     * Sauve le graphe g dans un fichier DOT, avec une ligne par arrête.
+     * @param g une instance de IGraph
+     * @param path destination
+     * @throws IOException
+     */
+    public static void writeToDotFile(IGraph g, String path) throws IOException {
+        writeToDotFile(g, path, DotEdges.Expanded);
     }
 
     /**
      * Sauve le graphe g dans un fichier DOT.
      * @param g une instance de IGraph
      * @param path destination
+     * @param edges représentation des arrêtes multiples
      * @throws IOException
      */
-    public static void writeToDotFile(IGraph g, String path) throws IOException {
-        BufferedWriter out = new BufferedWriter(new FileWriter(path));
+    public static void writeToDotFile(IGraph g, String path, DotEdges edges) throws IOException {
+        try (MatrixWriter out = MatrixWriter.open(path, false)) {
+            out.write("digraph name {\n");
+            writeDotEdges(out, g, edges);
+            out.write('}');
+        }
+    }
+
+    /**
+     * Écrit les arrêtes de g au format DOT. Les lignes vides d'après <i>hasExits</i> ne sont pas
+     * lues ; les autres sont copiées d'un bloc et seules leurs cases non nulles produisent une sortie.
+     * @param out destination
+     * @param g une instance de IGraph
+     * @param edges représentation des arrêtes multiples
+     * @throws IOException
+     */
+    static void writeDotEdges(MatrixWriter out, IGraph g, DotEdges edges) throws IOException {
+        int n = g.nbVertices();
+        int[] row = new int[n];
 
-        out.write("digraph name {\n");
+        for(int j = 0; j < n; j++) {
+            if(!g.hasExits(j)) {
+                continue;
+            }
+            g.copyExits(j, row);
+            for(int i = 0; i < n; i++) {
+                int m = row[i];
+                if(m == 0) {
+                    continue;
+                }
 
-        for(int j = 0; j < g.nbVertices(); j++) {
-            for(int i = 0; i < g.nbVertices(); i++) {
-                for(int k = 0; k < g.getEdgeCount(j, i); k++) {
-                    out.write(j + " -> " + i + ";\n");
+                int lines = edges == DotEdges.Expanded ? m : 1;
+                for(int k = 0; k < lines; k++) {
+                    out.write(j);
+                    out.write(" -> ");
+                    out.write(i);
+                    if(edges == DotEdges.PenWidth) {
+                        out.write(" [penwidth=");
+                        out.write(32 - Integer.numberOfLeadingZeros(m));
+                        if(m > 1) {
+                            out.write(" label=\"");
+                            out.write(m);
+                            out.write('"');
+                        }
+                        out.write(']');
+                    }
+                    else if(edges == DotEdges.Label && m > 1) {
+                        out.write(" [label=\"");
+                        out.write(m);
+                        out.write("\"]");
+                    }
+                    out.write(";\n");
                 }
             }
         }
-
-        out.write("}");
-
-        out.flush();
-        out.close();
     }
 
     /**
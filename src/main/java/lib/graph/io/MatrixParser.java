@@ -0,0 +1,391 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph.io;
+
+import lib.exceptions.MatrixFormatException;
+import lib.graph.Graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lecture d'un graphe dans l'un des deux formats texte, reconnu à la première ligne de valeurs.
+ * Dans les deux formats les lignes vides et celles qui commencent par '#' sont ignorées, ainsi que
+ * les espaces autour des valeurs.
+ *
+ * Matrice d'adjacence : une ligne par sommet, les valeurs séparées par des ';'. Les valeurs vides
+ * en fin de ligne sont ignorées.
+ *
+ * Liste d'arrêtes : le nombre de sommets n seul sur la première ligne, puis une ligne
+ * "source destination multiplicité" par couple de sommets reliés (multiplicité 1 si elle est omise,
+ * les multiplicités d'un même couple s'ajoutent). Un fichier qui ne contient qu'une seule valeur
+ * reste lu comme une matrice 1x1.
+ *
+ * Le fichier est lu octet par octet dans un tampon réutilisé, les entiers sont lus sans passer par
+ * des String et les valeurs sont écrites directement dans la matrice du graphe. Une erreur de format
+ * (valeur invalide, ligne de mauvaise taille, matrice non carrée, sommet inexistant) donne une
+ * MatrixFormatException avec la ligne et la colonne où elle se trouve.
+ *
+ * Un fichier compressé au format gzip, reconnu à son en-tête, est décompressé à la lecture.
+ */
+final class MatrixParser {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel in;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] bytes = buffer.array();
+    private int pos;
+    private int limit;
+
+    /**
+     * position dans la source du premier octet du tampon
+     */
+    private long base;
+
+    /**
+     * dernier octet lu, -1 à la fin du fichier
+     */
+    private int c;
+    private int line = 1;
+
+    /**
+     * position dans la source du premier octet de la ligne courante
+     */
+    private long lineStart;
+
+    /**
+     * valeurs de la ligne de matrice en cours de lecture
+     */
+    private int[] row = new int[16];
+
+    /**
+     *
+     * @param in source à lire, elle n'est pas fermée
+     */
+    MatrixParser(ReadableByteChannel in) {
+        this.in = in;
+    }
+
+    /**
+     *
+     * @param path chemin du fichier à charger
+     * @return le graphe lu, null si le fichier ne contient aucune ligne de valeurs
+     * @throws IOException
+     */
+    static Graph load(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path))) {
+            if(!isGzip(ch)) {
+                return new MatrixParser(ch).parse();
+            }
+            try (ReadableByteChannel in = Channels.newChannel(new GZIPInputStream(Channels.newInputStream(ch), BUFFER_SIZE))) {
+                return new MatrixParser(in).parse();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param ch un fichier, lu depuis le début
+     * @return True si le fichier commence par l'en-tête du format gzip
+     */
+    private static boolean isGzip(FileChannel ch) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(2);
+        while (b.hasRemaining() && ch.read(b) >= 0) {
+        }
+        ch.position(0);
+        return !b.hasRemaining() && (b.get(0) & 0xFF | (b.get(1) & 0xFF) << 8) == GZIPInputStream.GZIP_MAGIC;
+    }
+
+    /**
+     *
+     * @return le graphe lu, null si la source ne contient aucune ligne de valeurs
+     * @throws IOException
+     */
+    Graph parse() throws IOException {
+        next();
+        if(!nextDataLine()) {
+            return null;
+        }
+
+        int firstColumn = column();
+        int first = parseValue();
+        skipBlanks();
+        if(c == ';') {
+            return parseMatrix(first);
+        }
+        if(c != '\n' && c != -1) {
+            throw error("unexpected " + describe(c));
+        }
+
+        int firstLine = line;
+        next();
+        if(!nextDataLine()) {
+            Graph g = new Graph(1);
+            g.setEdgeCount(0, 0, first);
+            return g;
+        }
+        if(first < 0) {
+            throw new MatrixFormatException("negative vertex count", firstLine, firstColumn);
+        }
+        return parseEdges(first);
+    }
+
+    /**
+     * Lit la suite d'une matrice d'adjacence
+     * @param first la première valeur de la première ligne, l'octet courant est le ';' qui la suit
+     */
+    private Graph parseMatrix(int first) throws IOException {
+        row[0] = first;
+        next();
+        int n = readRow(1, -1);
+
+        Graph g = new Graph(n);
+        g.setExits(0, row);
+        int rows = 1;
+
+        while (nextDataLine()) {
+            if(rows == n) {
+                throw error("more than " + n + " rows");
+            }
+            int k = readRow(0, n);
+            if(k == 0) {
+                throw error("empty row");
+            }
+            if(k < n) {
+                throw error(k + " values, expected " + n);
+            }
+            g.setExits(rows++, row);
+        }
+
+        if(rows < n) {
+            throw error(rows + " rows, expected " + n);
+        }
+        return g;
+    }
+
+    /**
+     * Lit les valeurs d'une ligne de la matrice dans row
+     * @param k nombre de valeurs de la ligne déjà lues
+     * @param n nombre maximum de valeurs, -1 si il n'est pas encore connu
+     * @return le nombre de valeurs de la ligne
+     */
+    private int readRow(int k, int n) throws IOException {
+        // colonne de la première valeur vide rencontrée, une erreur seulement si une valeur la suit
+        int empty = 0;
+        while (true) {
+            skipBlanks();
+            if(c == ';' || c == '\n' || c == -1) {
+                if(empty == 0) {
+                    empty = column();
+                }
+            }
+            else {
+                if(empty != 0) {
+                    throw new MatrixFormatException("empty value", line, empty);
+                }
+                if(k == n) {
+                    throw error("more than " + n + " values");
+                }
+                if(k == row.length) {
+                    row = Arrays.copyOf(row, 2 * row.length);
+                }
+                row[k++] = parseValue();
+                skipBlanks();
+                if(c != ';' && c != '\n' && c != -1) {
+                    throw error("unexpected " + describe(c));
+                }
+            }
+
+            if(c != ';') {
+                return k;
+            }
+            next();
+        }
+    }
+
+    /**
+     * Lit les lignes d'une liste d'arrêtes
+     * @param n le nombre de sommets, lu sur la première ligne ; l'octet courant est le début de la ligne suivante
+     */
+    private Graph parseEdges(int n) throws IOException {
+        Graph g = new Graph(n);
+        do {
+            int src = parseVertex(n);
+            skipBlanks();
+            int dst = parseVertex(n);
+            skipBlanks();
+
+            int start = column();
+            int m = 1;
+            if(c != '\n' && c != -1) {
+                m = parseValue();
+                skipBlanks();
+            }
+            if(c != '\n' && c != -1) {
+                throw error("unexpected " + describe(c));
+            }
+            long sum = (long) g.getEdgeCount(src, dst) + m;
+            if(sum != (int) sum) {
+                throw new MatrixFormatException("value too large", line, start);
+            }
+            g.addEdges(src, dst, m);
+        } while (nextDataLine());
+
+        return g;
+    }
+
+    /**
+     * Passe les lignes vides et les commentaires
+     * @return false si la fin de la source est atteinte, sinon l'octet courant est le début d'une ligne de valeurs
+     */
+    private boolean nextDataLine() throws IOException {
+        while (true) {
+            skipBlanks();
+            if(c == '\n') {
+                next();
+            }
+            else if(c == '#') {
+                skipLine();
+            }
+            else {
+                return c != -1;
+            }
+        }
+    }
+
+    /**
+     * Lit l'octet suivant
+     */
+    private void next() throws IOException {
+        if(c == '\n') {
+            line++;
+            lineStart = base + pos;
+        }
+        if(pos == limit && !fill()) {
+            c = -1;
+            return;
+        }
+        c = bytes[pos++] & 0xFF;
+    }
+
+    /**
+     * Remplit le tampon avec la suite de la source
+     * @return false à la fin de la source
+     */
+    private boolean fill() throws IOException {
+        base += limit;
+        pos = 0;
+        limit = 0;
+        buffer.clear();
+        int r;
+        do {
+            r = in.read(buffer);
+        } while (r == 0);
+
+        if(r < 0) {
+            return false;
+        }
+        limit = r;
+        return true;
+    }
+
+    /**
+     *
+     * @return la colonne de l'octet courant, à partir de 1 (la fin de la source compte comme un octet)
+     */
+    private int column() {
+        return (int) (base + pos - lineStart) + (c == -1 ? 1 : 0);
+    }
+
+    private void skipBlanks() throws IOException {
+        while (c != -1 && c != '\n' && c <= ' ') {
+            next();
+        }
+    }
+
+    private void skipLine() throws IOException {
+        while (c != -1 && c != '\n') {
+            next();
+        }
+    }
+
+    /**
+     *
+     * @return l'entier qui commence à l'octet courant, éventuellement précédé d'un signe comme pour
+     * Integer.parseInt
+     */
+    private int parseValue() throws IOException {
+        int start = column();
+        boolean negative = c == '-';
+        if(c == '+' || c == '-') {
+            next();
+        }
+        if(c < '0' || c > '9') {
+            throw error("unexpected " + describe(c));
+        }
+
+        // accumulé en négatif pour pouvoir lire Integer.MIN_VALUE
+        int min = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int v = 0;
+        while (c >= '0' && c <= '9') {
+            int d = c - '0';
+            if(v < min / 10 || 10 * v < min + d) {
+                throw new MatrixFormatException("value too large", line, start);
+            }
+            v = 10 * v - d;
+            next();
+        }
+        return negative ? v : -v;
+    }
+
+    /**
+     *
+     * @param n nombre de sommets
+     * @return l'indice de sommet qui commence à l'octet courant
+     */
+    private int parseVertex(int n) throws IOException {
+        int start = column();
+        int v = parseValue();
+        if(v < 0 || v >= n) {
+            throw new MatrixFormatException("vertex " + v + " out of range, expected less than " + n, line, start);
+        }
+        return v;
+    }
+
+    private MatrixFormatException error(String message) {
+        return new MatrixFormatException(message, line, column());
+    }
+
+    private static String describe(int c) {
+        if(c == -1) {
+            return "end of file";
+        }
+        if(c == '\n') {
+            return "end of line";
+        }
+        if(c < ' ' || c >= 127) {
+            return "byte 0x" + Integer.toHexString(c);
+        }
+        return "character '" + (char) c + "'";
+    }
+}
@@ -0,0 +1,165 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.graph.io;
+
+import lib.graph.GraphBW;
+import lib.graph.StepSink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Destination des étapes d'un GraphBW qui ne garde aucun graphe en mémoire : chaque étape
+ * enregistrée est écrite dans le fichier DOT folder/r_k.dot (k étant son indice, comme pour
+ * <i>GraphBWIO.writeToDotFiles</i>) par un thread d'écriture en arrière plan. Les étapes en attente
+ * d'écriture passent par une file de taille bornée : <i>record</i> bloque quand elle est pleine.
+ * Après un échec d'écriture, le thread continue de vider la file sans plus rien écrire.
+ * <i>close()</i> doit être appelée pour attendre la fin des écritures.
+ */
+public class StreamingHistory implements StepSink, Closeable {
+    private static final GraphBW END = new GraphBW(0);
+
+    private final String folder;
+    private final BlockingQueue<GraphBW> queue;
+    private final Thread writer;
+    private volatile IOException error;
+    private int size;
+    private boolean closed;
+
+    /**
+     *
+     * @param folder répertoire cible
+     */
+    public StreamingHistory(String folder) {
+        this(folder, 16);
+    }
+
+    /**
+     *
+     * @param folder répertoire cible
+     * @param capacity nombre maximum de graphes en attente d'écriture
+     */
+    public StreamingHistory(String folder, int capacity) {
+        this.folder = GraphBWIO.normalizeFolder(folder);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::write, "StreamingHistory " + this.folder);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Boucle du thread d'écriture
+     */
+    private void write() {
+        try {
+            for(int i = 0; ; i++) {
+                GraphBW g = queue.take();
+                if(g == END) {
+                    return;
+                }
+                if(error == null) {
+                    try {
+                        GraphBWIO.writeToDotFile(g, folder + "r_" + i + ".dot");
+                    } catch (IOException e) {
+                        error = e;
+                    } catch (UncheckedIOException e) {
+                        error = e.getCause();
+                    } catch (RuntimeException e) {
+                        error = new IOException(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Met g dans la file d'écriture sans bloquer indéfiniment si le thread d'écriture s'est arrêté
+     * @param g un GraphBW
+     * @throws InterruptedException
+     * @throws IOException si le thread d'écriture s'est arrêté
+     */
+    private void enqueue(GraphBW g) throws InterruptedException, IOException {
+        while (!queue.offer(g, 100, TimeUnit.MILLISECONDS)) {
+            if(!writer.isAlive()) {
+                throw error != null ? error : new IOException(writer.getName() + " stopped");
+            }
+        }
+    }
+
+    /**
+     * Met une copie de g dans la file d'écriture
+     * @param g un GraphBW
+     * @throws UncheckedIOException si une écriture précédente a échoué
+     */
+    @Override
+    public void record(GraphBW g) {
+        if(closed) {
+            throw new IllegalStateException();
+        }
+        if(error != null) {
+            throw new UncheckedIOException(error);
+        }
+
+        try {
+            enqueue(g.clone());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        size++;
+    }
+
+    /**
+     *
+     * @return le nombre d'étapes enregistrées
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Attend que toutes les étapes enregistrées soient écrites puis arrête le thread d'écriture.
+     * @throws IOException si une des écritures a échoué
+     */
+    @Override
+    public void close() throws IOException {
+        if(!closed) {
+            closed = true;
+            try {
+                enqueue(END);
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        if(error != null) {
+            throw error;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package lib.math;
 
+import java.math.BigInteger;
+
 public abstract class Calcul {
 
     /**
@@ -15,4 +17,90 @@ public abstract class Calcul {
         return res;
     }
 
+    /**
+     * Calcule le déterminant de m par l'algorithme de Bareiss (sans fractions).
+     * Le calcul se fait sur des long et est repris avec des BigInteger en cas de dépassement.
+     * @param m une matrice carrée d'entiers, elle n'est pas modifiée
+     * @return le déterminant de m
+     */
+    public static BigInteger determinant(long[][] m) {
+        int n = m.length;
+        long[][] a = new long[n][];
+        for(int i = 0; i < n; i++) {
+            a[i] = m[i].clone();
+        }
+
+        try {
+            long prev = 1;
+            int sign = 1;
+            for(int k = 0; k < n - 1; k++) {
+                if(a[k][k] == 0) {
+                    int r = k + 1;
+                    while (r < n && a[r][k] == 0) {
+                        r++;
+                    }
+                    if(r == n) {
+                        return BigInteger.ZERO;
+                    }
+                    long[] tmp = a[r];
+                    a[r] = a[k];
+                    a[k] = tmp;
+                    sign = -sign;
+                }
+                for(int i = k + 1; i < n; i++) {
+                    for(int j = k + 1; j < n; j++) {
+                        long x = Math.subtractExact(Math.multiplyExact(a[i][j], a[k][k]), Math.multiplyExact(a[i][k], a[k][j]));
+                        a[i][j] = x / prev;
+                    }
+                }
+                prev = a[k][k];
+            }
+            long det = n == 0 ? 1 : a[n - 1][n - 1];
+            return BigInteger.valueOf(det).multiply(BigInteger.valueOf(sign));
+        } catch (ArithmeticException e) {
+            return determinantBig(m);
+        }
+    }
+
+    /**
+     * Même calcul que <i>determinant</i> avec des BigInteger
+     * @param m une matrice carrée d'entiers
+     * @return le déterminant de m
+     */
+    private static BigInteger determinantBig(long[][] m) {
+        int n = m.length;
+        BigInteger[][] a = new BigInteger[n][n];
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) {
+                a[i][j] = BigInteger.valueOf(m[i][j]);
+            }
+        }
+
+        BigInteger prev = BigInteger.ONE;
+        int sign = 1;
+        for(int k = 0; k < n - 1; k++) {
+            if(a[k][k].signum() == 0) {
+                int r = k + 1;
+                while (r < n && a[r][k].signum() == 0) {
+                    r++;
+                }
+                if(r == n) {
+                    return BigInteger.ZERO;
+                }
+                BigInteger[] tmp = a[r];
+                a[r] = a[k];
+                a[k] = tmp;
+                sign = -sign;
+            }
+            for(int i = k + 1; i < n; i++) {
+                for(int j = k + 1; j < n; j++) {
+                    a[i][j] = a[i][j].multiply(a[k][k]).subtract(a[i][k].multiply(a[k][j])).divide(prev);
+                }
+            }
+            prev = a[k][k];
+        }
+        BigInteger det = n == 0 ? BigInteger.ONE : a[n - 1][n - 1];
+        return sign < 0 ? det.negate() : det;
+    }
+
 }
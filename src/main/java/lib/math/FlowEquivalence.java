@@ -0,0 +1,243 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.math;
+
+import lib.graph.IGraph;
+import lib.graph.ReductionCache;
+
+import java.math.BigInteger;
+
+/**
+ * Décide si deux graphes sont flow-equivalent à partir de leurs invariants, sans appliquer
+ * aucune opération sur les graphes.
+ *
+ * D'après le théorème de Franks, deux graphes irréductibles (fortement connexes) qui ne sont pas
+ * réduits à un cycle sont flow-equivalent si et seulement si les signes de det(I - A) sont égaux
+ * et les groupes de Bowen-Franks Z^n / (I - A)Z^n sont isomorphes. Tous les cycles sont
+ * flow-equivalent entre eux. Pour les graphes réductibles ces invariants ne suffisent pas : le
+ * résultat est alors UNKNOWN.
+ *
+ * Les tests sont faits du moins coûteux au plus coûteux : structure du graphe en O(n^2), puis
+ * det(I - A), qui donne le signe et l'ordre du groupe, et enfin la forme normale de Smith
+ * seulement quand les déterminants ne permettent pas de conclure.
+ */
+public final class FlowEquivalence {
+
+    public enum Verdict {
+        EQUIVALENT,
+        NOT_EQUIVALENT,
+        UNKNOWN
+    }
+
+    /**
+     * Invariants d'un graphe, calculés à la demande et conservés : pour comparer un ensemble de
+     * graphes deux à deux, il suffit de les calculer une fois par graphe.
+     */
+    public static final class Invariants {
+        private final int nbVertices;
+        private final boolean irreducible;
+        private final boolean cycle;
+        private long[][] matrix;
+        private BigInteger determinant;
+        private SmithNormalForm smith;
+
+        private Invariants(IGraph g) {
+            nbVertices = g.nbVertices();
+            matrix = new long[nbVertices][nbVertices];
+
+            boolean allOne = true;
+            for(int i = 0; i < nbVertices; i++) {
+                int out = 0;
+                for(int j = 0; j < nbVertices; j++) {
+                    int e = g.getEdgeCount(i, j);
+                    out += e;
+                    matrix[i][j] = (i == j ? 1L : 0L) - e;
+                }
+                if(out != 1) {
+                    allOne = false;
+                }
+            }
+
+            irreducible = isStronglyConnected(matrix);
+            cycle = irreducible && allOne;
+        }
+
+        /**
+         *
+         * @return le nombre de sommets du graphe
+         */
+        public int nbVertices() {
+            return nbVertices;
+        }
+
+        /**
+         *
+         * @return True si le graphe a au moins une arrête et si chaque sommet est accessible depuis tous les autres
+         */
+        public boolean isIrreducible() {
+            return irreducible;
+        }
+
+        /**
+         *
+         * @return True si le graphe est irréductible et réduit à un seul cycle
+         */
+        public boolean isCycle() {
+            return cycle;
+        }
+
+        /**
+         *
+         * @return det(I - A)
+         */
+        public synchronized BigInteger getDeterminant() {
+            if(determinant == null) {
+                determinant = smith != null && smith.getDeterminantSign() == 0 ? BigInteger.ZERO : Calcul.determinant(matrix);
+            }
+            return determinant;
+        }
+
+        /**
+         *
+         * @return la forme normale de Smith de I - A
+         */
+        public synchronized SmithNormalForm getSmithNormalForm() {
+            if(smith == null) {
+                getDeterminant();
+                smith = SmithNormalForm.of(matrix);
+                matrix = null;
+            }
+            return smith;
+        }
+    }
+
+    private FlowEquivalence() {
+    }
+
+    /**
+     *
+     * @param g une instance de IGraph
+     * @return les invariants de g, à réutiliser avec <i>compare(Invariants, Invariants)</i>, pris dans
+     * <i>ReductionCache.getShared()</i> si ce cache est activé
+     */
+    public static Invariants invariants(IGraph g) {
+        ReductionCache cache = ReductionCache.getShared();
+        if(cache == null) {
+            return new Invariants(g);
+        }
+        return cache.invariants(g, Invariants::new);
+    }
+
+    /**
+     *
+     * @param a une instance de IGraph
+     * @param b une instance de IGraph
+     * @return True si a et b sont flow-equivalent, False si ils ne le sont pas ou si on ne peut pas le décider
+     */
+    public static boolean isFlowEquivalent(IGraph a, IGraph b) {
+        return compare(a, b) == Verdict.EQUIVALENT;
+    }
+
+    /**
+     *
+     * @param a une instance de IGraph
+     * @param b une instance de IGraph
+     * @return le verdict pour a et b
+     */
+    public static Verdict compare(IGraph a, IGraph b) {
+        return compare(invariants(a), invariants(b));
+    }
+
+    /**
+     *
+     * @param a les invariants d'un graphe
+     * @param b les invariants d'un graphe
+     * @return le verdict pour les deux graphes
+     */
+    public static Verdict compare(Invariants a, Invariants b) {
+        if(!a.isIrreducible() || !b.isIrreducible()) {
+            return Verdict.UNKNOWN;
+        }
+        if(a.isCycle() || b.isCycle()) {
+            return a.isCycle() == b.isCycle() ? Verdict.EQUIVALENT : Verdict.NOT_EQUIVALENT;
+        }
+
+        BigInteger da = a.getDeterminant();
+        BigInteger db = b.getDeterminant();
+        if(da.signum() != db.signum() || !da.abs().equals(db.abs())) {
+            return Verdict.NOT_EQUIVALENT;
+        }
+        if(da.abs().equals(BigInteger.ONE)) {
+            // les deux groupes sont triviaux
+            return Verdict.EQUIVALENT;
+        }
+
+        boolean same = a.getSmithNormalForm().getInvariantFactors().equals(b.getSmithNormalForm().getInvariantFactors());
+        return same ? Verdict.EQUIVALENT : Verdict.NOT_EQUIVALENT;
+    }
+
+    /**
+     *
+     * @param m la matrice I - A
+     * @return True si A a au moins une arrête et si le graphe de A est fortement connexe
+     */
+    private static boolean isStronglyConnected(long[][] m) {
+        int n = m.length;
+        if(n == 0) {
+            return false;
+        }
+
+        boolean edge = false;
+        for(int i = 0; i < n && !edge; i++) {
+            for(int j = 0; j < n && !edge; j++) {
+                edge = m[i][j] != (i == j ? 1L : 0L);
+            }
+        }
+
+        return edge && reachesAll(m, false) && reachesAll(m, true);
+    }
+
+    /**
+     *
+     * @param m la matrice I - A
+     * @param reverse True pour suivre les arrêtes à l'envers
+     * @return True si tous les sommets sont accessibles depuis le sommet 0
+     */
+    private static boolean reachesAll(long[][] m, boolean reverse) {
+        int n = m.length;
+        boolean[] seen = new boolean[n];
+        int[] stack = new int[n];
+        int top = 0;
+        int count = 1;
+        seen[0] = true;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int i = stack[--top];
+            for(int j = 0; j < n; j++) {
+                long v = reverse ? m[j][i] : m[i][j];
+                if(!seen[j] && v != (i == j ? 1L : 0L)) {
+                    seen[j] = true;
+                    stack[top++] = j;
+                    count++;
+                }
+            }
+        }
+
+        return count == n;
+    }
+}
@@ -0,0 +1,389 @@
+/*
+Copyright 2020 Antoine PETITJEAN, Olivier ZEYEN
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package lib.math;
+
+import lib.graph.IGraph;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Forme normale de Smith d'une matrice carrée d'entiers, calculée en arithmétique exacte.
+ * Le calcul se fait d'abord sur des long ; en cas de dépassement de capacité il est repris
+ * avec des BigInteger.
+ *
+ * Appliquée à I - A, où A est la matrice d'adjacence d'un graphe, elle donne le groupe de
+ * Bowen-Franks Z^n / (I - A)Z^n et, avec le signe de det(I - A), les invariants de Franks de
+ * la flow-equivalence, sans appliquer aucune opération sur le graphe.
+ */
+public final class SmithNormalForm {
+    private final BigInteger[] diagonal;
+    private final int determinantSign;
+
+    private SmithNormalForm(BigInteger[] diagonal, int determinantSign) {
+        this.diagonal = diagonal;
+        this.determinantSign = determinantSign;
+    }
+
+    /**
+     *
+     * @param g une instance de IGraph
+     * @return la forme normale de Smith de I - A, A étant la matrice d'adjacence de g
+     */
+    public static SmithNormalForm of(IGraph g) {
+        int n = g.nbVertices();
+        long[][] m = new long[n][n];
+
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) {
+                m[i][j] = (i == j ? 1L : 0L) - g.getEdgeCount(i, j);
+            }
+        }
+
+        return compute(m);
+    }
+
+    /**
+     *
+     * @param m une matrice carrée, elle n'est pas modifiée
+     * @return la forme normale de Smith de m
+     */
+    public static SmithNormalForm of(long[][] m) {
+        long[][] copy = new long[m.length][];
+        for(int i = 0; i < m.length; i++) {
+            copy[i] = Arrays.copyOf(m[i], m.length);
+        }
+        return compute(copy);
+    }
+
+    /**
+     * @param m une matrice carrée, modifiée par le calcul
+     */
+    private static SmithNormalForm compute(long[][] m) {
+        long[][] save = new long[m.length][];
+        for(int i = 0; i < m.length; i++) {
+            save[i] = m[i].clone();
+        }
+
+        try {
+            return computeLong(m);
+        } catch (ArithmeticException e) {
+            BigInteger[][] b = new BigInteger[save.length][save.length];
+            for(int i = 0; i < save.length; i++) {
+                for(int j = 0; j < save.length; j++) {
+                    b[i][j] = BigInteger.valueOf(save[i][j]);
+                }
+            }
+            return computeBig(b);
+        }
+    }
+
+    /**
+     * Diagonalise m par opérations élémentaires sur les lignes et les colonnes : à chaque étape le
+     * plus petit coefficient non nul (en valeur absolue) du reste de la matrice sert de pivot.
+     * @throws ArithmeticException en cas de dépassement de capacité
+     */
+    private static SmithNormalForm computeLong(long[][] m) {
+        int n = m.length;
+        int sign = 1;
+        int t = 0;
+
+        for(; t < n; t++) {
+            boolean done = false;
+            while (!done) {
+                int p = -1;
+                int q = -1;
+                for(int i = t; i < n; i++) {
+                    for(int j = t; j < n; j++) {
+                        if(m[i][j] == Long.MIN_VALUE) {
+                            throw new ArithmeticException();
+                        }
+                        if(m[i][j] != 0 && (p == -1 || Math.abs(m[i][j]) < Math.abs(m[p][q]))) {
+                            p = i;
+                            q = j;
+                        }
+                    }
+                }
+
+                if(p == -1) {
+                    break;
+                }
+
+                if(p != t) {
+                    long[] tmp = m[p];
+                    m[p] = m[t];
+                    m[t] = tmp;
+                    sign = -sign;
+                }
+                if(q != t) {
+                    for(int i = t; i < n; i++) {
+                        long tmp = m[i][q];
+                        m[i][q] = m[i][t];
+                        m[i][t] = tmp;
+                    }
+                    sign = -sign;
+                }
+
+                long pivot = m[t][t];
+                done = true;
+
+                for(int i = t + 1; i < n; i++) {
+                    long k = m[i][t] / pivot;
+                    if(k != 0) {
+                        for(int j = t; j < n; j++) {
+                            m[i][j] = Math.subtractExact(m[i][j], Math.multiplyExact(k, m[t][j]));
+                        }
+                    }
+                    if(m[i][t] != 0) {
+                        done = false;
+                    }
+                }
+
+                for(int j = t + 1; j < n; j++) {
+                    long k = m[t][j] / pivot;
+                    if(k != 0) {
+                        for(int i = t; i < n; i++) {
+                            m[i][j] = Math.subtractExact(m[i][j], Math.multiplyExact(k, m[i][t]));
+                        }
+                    }
+                    if(m[t][j] != 0) {
+                        done = false;
+                    }
+                }
+            }
+
+            if(m[t][t] == 0) {
+                break;
+            }
+        }
+
+        long[] d = new long[n];
+        for(int i = 0; i < t; i++) {
+            if(m[i][i] < 0) {
+                sign = -sign;
+            }
+            d[i] = Math.abs(m[i][i]);
+        }
+        if(t < n) {
+            sign = 0;
+        }
+
+        for(int i = 0; i < n; i++) {
+            for(int j = i + 1; j < n; j++) {
+                long g = gcd(d[i], d[j]);
+                if(g != 0) {
+                    long l = Math.multiplyExact(d[i] / g, d[j]);
+                    d[i] = g;
+                    d[j] = l;
+                }
+            }
+        }
+
+        BigInteger[] res = new BigInteger[n];
+        for(int i = 0; i < n; i++) {
+            res[i] = BigInteger.valueOf(d[i]);
+        }
+        return new SmithNormalForm(res, sign);
+    }
+
+    /**
+     * Même algorithme que <i>computeLong</i> avec des BigInteger.
+     */
+    private static SmithNormalForm computeBig(BigInteger[][] m) {
+        int n = m.length;
+        int sign = 1;
+        int t = 0;
+
+        for(; t < n; t++) {
+            boolean done = false;
+            while (!done) {
+                int p = -1;
+                int q = -1;
+                for(int i = t; i < n; i++) {
+                    for(int j = t; j < n; j++) {
+                        if(m[i][j].signum() != 0 && (p == -1 || m[i][j].abs().compareTo(m[p][q].abs()) < 0)) {
+                            p = i;
+                            q = j;
+                        }
+                    }
+                }
+
+                if(p == -1) {
+                    break;
+                }
+
+                if(p != t) {
+                    BigInteger[] tmp = m[p];
+                    m[p] = m[t];
+                    m[t] = tmp;
+                    sign = -sign;
+                }
+                if(q != t) {
+                    for(int i = t; i < n; i++) {
+                        BigInteger tmp = m[i][q];
+                        m[i][q] = m[i][t];
+                        m[i][t] = tmp;
+                    }
+                    sign = -sign;
+                }
+
+                BigInteger pivot = m[t][t];
+                done = true;
+
+                for(int i = t + 1; i < n; i++) {
+                    BigInteger k = m[i][t].divide(pivot);
+                    if(k.signum() != 0) {
+                        for(int j = t; j < n; j++) {
+                            m[i][j] = m[i][j].subtract(k.multiply(m[t][j]));
+                        }
+                    }
+                    if(m[i][t].signum() != 0) {
+                        done = false;
+                    }
+                }
+
+                for(int j = t + 1; j < n; j++) {
+                    BigInteger k = m[t][j].divide(pivot);
+                    if(k.signum() != 0) {
+                        for(int i = t; i < n; i++) {
+                            m[i][j] = m[i][j].subtract(k.multiply(m[i][t]));
+                        }
+                    }
+                    if(m[t][j].signum() != 0) {
+                        done = false;
+                    }
+                }
+            }
+
+            if(m[t][t].signum() == 0) {
+                break;
+            }
+        }
+
+        BigInteger[] d = new BigInteger[n];
+        Arrays.fill(d, BigInteger.ZERO);
+        for(int i = 0; i < t; i++) {
+            if(m[i][i].signum() < 0) {
+                sign = -sign;
+            }
+            d[i] = m[i][i].abs();
+        }
+        if(t < n) {
+            sign = 0;
+        }
+
+        for(int i = 0; i < n; i++) {
+            for(int j = i + 1; j < n; j++) {
+                BigInteger g = d[i].gcd(d[j]);
+                if(g.signum() != 0) {
+                    BigInteger l = d[i].divide(g).multiply(d[j]);
+                    d[i] = g;
+                    d[j] = l;
+                }
+            }
+        }
+
+        return new SmithNormalForm(d, sign);
+    }
+
+    /**
+     *
+     * @param a un entier positif ou nul
+     * @param b un entier positif ou nul
+     * @return le pgcd de a et b
+     */
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    /**
+     *
+     * @return la diagonale d de la forme normale : d[i] divise d[i + 1], les zéros sont à la fin
+     */
+    public BigInteger[] getDiagonal() {
+        return diagonal.clone();
+    }
+
+    /**
+     *
+     * @return le nombre de coefficients non nuls de la diagonale
+     */
+    public int getRank() {
+        int r = 0;
+        while (r < diagonal.length && diagonal[r].signum() != 0) {
+            r++;
+        }
+        return r;
+    }
+
+    /**
+     *
+     * @return le signe du déterminant de la matrice : -1, 0 ou 1
+     */
+    public int getDeterminantSign() {
+        return determinantSign;
+    }
+
+    /**
+     * Le groupe Z^n / MZ^n est la somme directe des Z/dZ pour d dans cette liste (Z/0Z = Z).
+     * @return les coefficients de la diagonale différents de 1
+     */
+    public List<BigInteger> getInvariantFactors() {
+        List<BigInteger> res = new ArrayList<>();
+        for(BigInteger d : diagonal) {
+            if(!d.equals(BigInteger.ONE)) {
+                res.add(d);
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @return l'ordre du groupe Z^n / MZ^n, 0 si il est infini
+     */
+    public BigInteger getGroupOrder() {
+        BigInteger res = BigInteger.ONE;
+        for(BigInteger d : diagonal) {
+            res = res.multiply(d);
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @return le groupe sous la forme "Z/2 + Z/6 + Z", "0" pour le groupe trivial
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for(BigInteger d : getInvariantFactors()) {
+            if(str.length() != 0) {
+                str.append(" + ");
+            }
+            str.append(d.signum() == 0 ? "Z" : "Z/" + d);
+        }
+        return str.length() == 0 ? "0" : str.toString();
+    }
+}